@@ -0,0 +1,65 @@
+package com.tanermansur.loan.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Backs the Hibernate second-level cache with local Caffeine caches. Every region is created here with its own size and
+ * time to live, and Hibernate is told to fail on any region that was not configured instead of creating an unbounded one.
+ */
+@Configuration
+@EnableConfigurationProperties(SecondLevelCacheProperties.class)
+public class SecondLevelCacheConfig {
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(ObjectProvider<CacheManager> secondLevelCacheManager) {
+        return hibernateProperties -> {
+            CacheManager cacheManager = secondLevelCacheManager.getIfAvailable();
+
+            hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, cacheManager != null);
+
+            if (cacheManager != null) {
+                hibernateProperties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+                hibernateProperties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+                hibernateProperties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+            }
+        };
+    }
+
+    @ConditionalOnProperty(prefix = "loan.second-level-cache", name = "enabled", matchIfMissing = true)
+    @Bean
+    public CacheManager secondLevelCacheManager(SecondLevelCacheProperties properties, MeterRegistry meterRegistry) {
+        // Each application context gets caches of its own, even when several of them share a class loader
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("loan-" + UUID.randomUUID()), SecondLevelCacheConfig.class.getClassLoader());
+
+        properties.getRegions().forEach((name, region) -> {
+            CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+
+            configuration.setMaximumSize(OptionalLong.of(region.getMaximumSize()));
+            configuration.setExpireAfterWrite(OptionalLong.of(region.getTimeToLive().toNanos()));
+            configuration.setNativeStatisticsEnabled(true);
+
+            // Hits and misses per region are exported without turning on Hibernate's session-wide statistics
+            CaffeineCacheMetrics.monitor(meterRegistry, cacheManager.createCache(name, configuration).unwrap(Cache.class), "loan.second-level-cache." + name);
+        });
+
+        return cacheManager;
+    }
+}
@@ -0,0 +1,21 @@
+package com.tanermansur.loan.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "loan.second-level-cache")
+public class SecondLevelCacheProperties {
+    // Keyed by the region names used in the entities' @Cache annotations
+    private Map<String, Region> regions = new LinkedHashMap<>();
+
+    @Data
+    public static class Region {
+        private long maximumSize;
+        private Duration timeToLive;
+    }
+}
@@ -1,60 +1,34 @@
 package com.tanermansur.loan.context;
 
-import com.tanermansur.loan.dto.LoanDTO;
-import com.tanermansur.loan.dto.LoanInstallmentDTO;
 import com.tanermansur.loan.entity.Customer;
 import com.tanermansur.loan.entity.Loan;
-import com.tanermansur.loan.entity.LoanInstallment;
+import com.tanermansur.loan.money.Money;
+import com.tanermansur.loan.money.Rate;
 import lombok.Builder;
 import lombok.Data;
 
-import java.math.BigDecimal;
-import java.text.NumberFormat;
+import java.math.RoundingMode;
 import java.time.Instant;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
 
 @Builder
 @Data
 public class CreateLoanContext {
-    private static final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-    private static final NumberFormat nf = NumberFormat.getCurrencyInstance();
-
     private Instant now;
     private Customer customer;
-    private BigDecimal loanAmount;
-    private int currencyFractionDigits;
+    private Money loanAmount;
     private int numberOfInstallments;
-    private BigDecimal interestRate;
-    private BigDecimal amountToBePaidBack;
-    private BigDecimal singleInstallmentAmount;
-    private BigDecimal residueLoanAmount;
+    private Rate interestRate;
+    private Money amountToBePaidBack;
+    private Money singleInstallmentAmount;
+    private Money residueLoanAmount;
     private Loan loan;
 
-    public LoanDTO toLoanDTO() {
-        LoanDTO loanDTO = new LoanDTO();
-
-        loanDTO.setId(loan.getId());
-        loanDTO.setNumberOfInstallments(loan.getNumberOfInstallments());
-        loanDTO.setPaid(loan.isPaid());
-
-        List<LoanInstallmentDTO> loanInstallmentDTOList = new ArrayList<>();
-        for (LoanInstallment installment : loan.getInstallments()) {
-            LoanInstallmentDTO loanInstallmentDTO = new LoanInstallmentDTO();
-
-            loanInstallmentDTO.setDueDate(dtf.format(installment.getDueDate().toLocalDate()));
-            loanInstallmentDTO.setAmount(nf.format(installment.getAmount()));
-
-            if (installment.isPaid()) {
-                loanInstallmentDTO.setPaidAmount(nf.format(installment.getPaidAmount()));
-                loanInstallmentDTO.setPaymentDate(dtf.format(installment.getPaymentDate().toLocalDate()));
-            }
-
-            loanInstallmentDTOList.add(loanInstallmentDTO);
-        }
-        loanDTO.setInstallments(loanInstallmentDTOList);
+    // Installments are rounded from the exact total, the residue makes the last one add up to the rounded total
+    public void calculateInstallmentAmounts() {
+        Rate totalRate = Rate.ONE.plus(interestRate);
 
-        return loanDTO;
+        amountToBePaidBack = loanAmount.multiply(totalRate, RoundingMode.HALF_UP);
+        singleInstallmentAmount = loanAmount.multiplyAndDivide(totalRate, numberOfInstallments, RoundingMode.HALF_UP);
+        residueLoanAmount = amountToBePaidBack.minus(singleInstallmentAmount.times(numberOfInstallments));
     }
 }
@@ -0,0 +1,34 @@
+package com.tanermansur.loan.controller;
+
+import com.tanermansur.loan.dto.BulkPayLoanReportDTO;
+import com.tanermansur.loan.dto.GetLoansRequestDTO;
+import com.tanermansur.loan.facade.BulkLoanFacade;
+import com.tanermansur.loan.facade.BulkPayLoanFacade;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// Operations across all customers, see LoanController for those on behalf of a single customer
+@RestController
+@RequestMapping("/api/v1/admin/loan")
+@RequiredArgsConstructor
+public class AdminLoanController {
+    private final BulkLoanFacade bulkLoanFacade;
+    private final BulkPayLoanFacade bulkPayLoanFacade;
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportLoans(GetLoansRequestDTO request) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(bulkLoanFacade.exportAllLoans(request));
+    }
+
+    @PostMapping(value = "/payment/bulk", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<BulkPayLoanReportDTO> payLoans(InputStream payments, @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType) throws IOException {
+        return ResponseEntity.ok(bulkPayLoanFacade.payLoans(payments, contentType));
+    }
+}
@@ -2,24 +2,55 @@ package com.tanermansur.loan.controller;
 
 import com.tanermansur.loan.dto.*;
 import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.facade.AsyncPaymentFacade;
+import com.tanermansur.loan.facade.BulkLoanFacade;
 import com.tanermansur.loan.facade.LoanFacade;
+import com.tanermansur.loan.facade.WriteLaneExecutor;
+import com.tanermansur.loan.service.IdempotencyService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.web.PagedModel;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.List;
+import java.util.Set;
 
 @RestController
     @RequestMapping({"/api/v1/loan", "/api/v1/admin/{customerUsername}/loan"})
 @RequiredArgsConstructor
 public class LoanController {
+    private static final String PREFER = "Prefer";
+    private static final String PREFERENCE_APPLIED = "Preference-Applied";
+    private static final String RESPOND_ASYNC = "respond-async";
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     private final LoanFacade loanFacade;
+    private final BulkLoanFacade bulkLoanFacade;
+    private final AsyncPaymentFacade asyncPaymentFacade;
+    private final IdempotencyService idempotencyService;
+    private final WriteLaneExecutor writeLaneExecutor;
 
+    // Retries sending the same Idempotency-Key get the response of the first request, which is only run once. Writes of
+    // the same customer are run one after the other on the customer's lane, see WriteLaneExecutor
     @PostMapping
-    public ResponseEntity<LoanDTO> createLoan(@ModelAttribute Customer customer, @RequestBody CreateLoanRequestDTO request) {
-        return ResponseEntity.ok(loanFacade.createLoan(customer, request));
+    public ResponseEntity<LoanDTO> createLoan(@ModelAttribute Customer customer, @RequestBody CreateLoanRequestDTO request, @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return ResponseEntity.ok(idempotencyService.execute(customer, idempotencyKey, "createLoan", request, () -> writeLaneExecutor.execute(customer, () -> loanFacade.createLoan(customer, request))));
+    }
+
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<List<BulkCreateLoanResultDTO>> createLoans(@ModelAttribute Customer customer, InputStream requests) throws IOException {
+        return ResponseEntity.ok(bulkLoanFacade.createLoans(customer, requests));
     }
 
     @GetMapping
@@ -27,13 +58,95 @@ public class LoanController {
         return ResponseEntity.ok(new PagedModel<>(loanFacade.getLoans(customer, request, pageSize, page)));
     }
 
+    @GetMapping(params = "cursor")
+    public ResponseEntity<LoanCursorPageDTO> getLoans(@ModelAttribute Customer customer, @RequestParam(defaultValue = "10") int pageSize, @RequestParam String cursor, GetLoansRequestDTO request) {
+        return ResponseEntity.ok(loanFacade.getLoans(customer, request, pageSize, cursor));
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportLoans(@ModelAttribute Customer customer, GetLoansRequestDTO request) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(bulkLoanFacade.exportLoans(customer, request));
+    }
+
+    @GetMapping("/{loanId}")
+    public ResponseEntity<LoanDTO> getLoan(@ModelAttribute Customer customer, @PathVariable long loanId, WebRequest webRequest) {
+        String eTag = loanFacade.getLoanETag(customer, loanId);
+
+        if (webRequest.checkNotModified(eTag)) {
+            return notModified();
+        }
+
+        return conditional(eTag).body(loanFacade.getLoan(customer, loanId));
+    }
+
     @GetMapping("/{loanId}/installment")
-    public ResponseEntity<List<LoanInstallmentDTO>> getInstallments(@ModelAttribute Customer customer, @PathVariable long loanId) {
-        return ResponseEntity.ok(loanFacade.getInstallments(customer, loanId));
+    public ResponseEntity<List<LoanInstallmentDTO>> getInstallments(@ModelAttribute Customer customer, @PathVariable long loanId, @RequestParam(required = false) Set<String> fields, WebRequest webRequest) {
+        String eTag = loanFacade.getLoanETag(customer, loanId);
+
+        // Only the version is read for an unchanged schedule, installments are loaded when it has changed
+        if (webRequest.checkNotModified(eTag)) {
+            return notModified();
+        }
+
+        return conditional(eTag).body(loanFacade.getInstallments(customer, loanId, fields));
     }
 
     @PatchMapping("/{loanId}")
-    public ResponseEntity<PayLoanResponseDTO> payLoan(@ModelAttribute Customer customer, @PathVariable long loanId, @RequestBody PayLoanRequestDTO request) {
-        return ResponseEntity.ok(loanFacade.payLoan(customer, loanId, request));
+    public ResponseEntity<PayLoanResponseDTO> payLoan(@ModelAttribute Customer customer, @PathVariable long loanId, @RequestBody PayLoanRequestDTO request, @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return ResponseEntity.ok(idempotencyService.execute(customer, idempotencyKey, "payLoan:" + loanId, new PaymentRequest(request, false), () -> writeLaneExecutor.execute(customer, () -> loanFacade.payLoan(customer, loanId, request))));
+    }
+
+    // Clients opting in with Prefer: respond-async get the payment id to poll instead of waiting for the payment
+    @PatchMapping(value = "/{loanId}", headers = PREFER)
+    public ResponseEntity<?> payLoan(@ModelAttribute Customer customer, @PathVariable long loanId, @RequestBody PayLoanRequestDTO request, @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey, @RequestHeader(PREFER) List<String> preferences) {
+        if (!preferences.contains(RESPOND_ASYNC)) {
+            return payLoan(customer, loanId, request, idempotencyKey);
+        }
+
+        AsyncPaymentDTO payment = idempotencyService.execute(customer, idempotencyKey, "payLoan:" + loanId, new PaymentRequest(request, true), () -> asyncPaymentFacade.submitPayment(customer, loanId, request));
+        URI location = ServletUriComponentsBuilder.fromCurrentRequestUri()
+                .path("/../payment/{paymentId}")
+                .buildAndExpand(payment.getPaymentId())
+                .normalize()
+                .toUri();
+
+        return ResponseEntity.accepted()
+                .location(location)
+                .header(PREFERENCE_APPLIED, RESPOND_ASYNC)
+                .body(payment);
+    }
+
+    @GetMapping("/payment/{paymentId}")
+    public ResponseEntity<AsyncPaymentDTO> getPayment(@ModelAttribute Customer customer, @PathVariable String paymentId) {
+        return ResponseEntity.ok(asyncPaymentFacade.getPayment(customer, paymentId));
+    }
+
+    @PatchMapping
+    public ResponseEntity<PayLoansResponseDTO> payLoans(@ModelAttribute Customer customer, @RequestBody PayLoanRequestDTO request, @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return ResponseEntity.ok(idempotencyService.execute(customer, idempotencyKey, "payLoans", request, () -> writeLaneExecutor.execute(customer, () -> loanFacade.payLoans(customer, request))));
+    }
+
+    // What the PATCH below would do with the same amount, without paying anything
+    @GetMapping("/{loanId}/payment-quote")
+    public ResponseEntity<PayLoanResponseDTO> quotePayment(@ModelAttribute Customer customer, @PathVariable long loanId, PayLoanRequestDTO request) {
+        return ResponseEntity.ok(loanFacade.quotePayment(customer, loanId, request));
+    }
+
+    // Both ways of paying a loan share their idempotency keys, so that a retry switching between them is turned down
+    // rather than paying twice
+    private record PaymentRequest(PayLoanRequestDTO request, boolean async) {
+    }
+
+    // checkNotModified has already written the status and the ETag
+    private static <T> ResponseEntity<T> notModified() {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).varyBy(HttpHeaders.ACCEPT_LANGUAGE).build();
+    }
+
+    // A payment landing after the version was read at worst costs the client one more full response
+    private static ResponseEntity.BodyBuilder conditional(String eTag) {
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .varyBy(HttpHeaders.ACCEPT_LANGUAGE);
     }
 }
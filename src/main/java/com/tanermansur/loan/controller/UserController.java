@@ -7,6 +7,7 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.*;
 
@@ -34,6 +35,6 @@ public class UserController {
             username = authRequest.getUsername();
         }
 
-        return jwtService.generateToken(username);
+        return jwtService.generateToken(username, (UserDetails) authentication.getPrincipal());
     }
 }
\ No newline at end of file
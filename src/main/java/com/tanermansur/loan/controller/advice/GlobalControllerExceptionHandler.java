@@ -2,7 +2,12 @@ package com.tanermansur.loan.controller.advice;
 
 import com.tanermansur.loan.dto.ErrorDTO;
 import com.tanermansur.loan.exception.AbstractLoanException;
+import com.tanermansur.loan.exception.IdempotentRequestInProgressException;
+import com.tanermansur.loan.exception.QueueFullException;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.web.bind.annotation.*;
@@ -24,6 +29,32 @@ public class GlobalControllerExceptionHandler {
         return ErrorDTO.builder().message(e.getLocalizedMessage()).build();
     }
 
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ExceptionHandler(value = OptimisticLockingFailureException.class, produces = "application/json")
+    public @ResponseBody ErrorDTO handleOptimisticLockingFailureException(OptimisticLockingFailureException e) {
+        log.warn(e.getMessage(), e);
+
+        return ErrorDTO.builder().message("The loan was changed by another request, please retry").build();
+    }
+
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ExceptionHandler(value = IdempotentRequestInProgressException.class, produces = "application/json")
+    public @ResponseBody ErrorDTO handleIdempotentRequestInProgressException(IdempotentRequestInProgressException e) {
+        log.warn(e.getMessage());
+
+        return ErrorDTO.builder().message(e.getMessage()).build();
+    }
+
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler(value = QueueFullException.class, produces = "application/json")
+    public @ResponseBody ErrorDTO handleQueueFullException(QueueFullException e, HttpServletResponse response) {
+        log.warn(e.getMessage());
+
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, e.getRetryAfter().toSeconds())));
+
+        return ErrorDTO.builder().message(e.getMessage()).build();
+    }
+
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     @ExceptionHandler(Exception.class)
     public void handleException(Exception e) {
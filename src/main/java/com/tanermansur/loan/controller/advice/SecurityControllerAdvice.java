@@ -23,6 +23,11 @@ public class SecurityControllerAdvice {
         UserDetails userDetails = (UserDetails) a.getPrincipal();
 
         if (userDetails.getAuthorities().stream().anyMatch(auth -> auth.getAuthority().equals("ROLE_ADMIN"))) {
+            // Admin requests across customers are not made on behalf of anyone
+            if (customerUsername == null) {
+                return null;
+            }
+
             return (Customer) customerService.loadUserByUsername(customerUsername);
         }
 
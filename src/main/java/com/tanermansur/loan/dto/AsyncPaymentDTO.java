@@ -0,0 +1,16 @@
+package com.tanermansur.loan.dto;
+
+import lombok.Data;
+
+@Data
+public class AsyncPaymentDTO {
+    public enum Status {
+        PENDING, COMPLETED, FAILED
+    }
+
+    private String paymentId;
+    private Long loanId;
+    private Status status;
+    private PayLoanResponseDTO payment;
+    private String error;
+}
@@ -0,0 +1,10 @@
+package com.tanermansur.loan.dto;
+
+import lombok.Data;
+
+@Data
+public class BulkCreateLoanResultDTO {
+    private int index;
+    private Long loanId;
+    private String error;
+}
@@ -0,0 +1,12 @@
+package com.tanermansur.loan.dto;
+
+import lombok.Data;
+
+@Data
+public class BulkPayLoanReportDTO {
+    // NDJSON file with one BulkPayLoanResultDTO per payment, in the order payments were applied
+    private String reportFile;
+    private long numberOfPayments;
+    private long numberOfPaymentsApplied;
+    private long numberOfPaymentsFailed;
+}
@@ -0,0 +1,10 @@
+package com.tanermansur.loan.dto;
+
+import lombok.Data;
+
+@Data
+public class BulkPayLoanRequestDTO {
+    private Long customerId;
+    private Long loanId;
+    private String amount;
+}
@@ -0,0 +1,12 @@
+package com.tanermansur.loan.dto;
+
+import lombok.Data;
+
+@Data
+public class BulkPayLoanResultDTO {
+    private long index;
+    private Long customerId;
+    private Long loanId;
+    private PayLoanResponseDTO payment;
+    private String error;
+}
@@ -3,10 +3,25 @@ package com.tanermansur.loan.dto;
 import lombok.Data;
 
 import java.math.BigDecimal;
+import java.util.Objects;
 
 @Data
 public class CreateLoanRequestDTO {
     private BigDecimal loanAmount;
     private int numberOfInstallments;
     private String interestRate;
+
+    // Retries of a request are told apart from other requests by equality, whatever scale their amount was sent with
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CreateLoanRequestDTO other
+                && (loanAmount == null ? other.loanAmount == null : other.loanAmount != null && loanAmount.compareTo(other.loanAmount) == 0)
+                && numberOfInstallments == other.numberOfInstallments
+                && Objects.equals(interestRate, other.interestRate);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(loanAmount == null ? null : loanAmount.stripTrailingZeros(), numberOfInstallments, interestRate);
+    }
 }
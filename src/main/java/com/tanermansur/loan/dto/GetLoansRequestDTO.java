@@ -3,9 +3,13 @@ package com.tanermansur.loan.dto;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.Set;
+
 @Setter
 @Getter
 public class GetLoansRequestDTO {
-    private int numberOfInstallments;
-    private boolean isPaid;
+    private Integer numberOfInstallments;
+    private Boolean isPaid;
+    private Set<String> fields;
+    private Set<String> embed;
 }
@@ -0,0 +1,11 @@
+package com.tanermansur.loan.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class LoanCursorPageDTO {
+    private List<LoanDTO> content;
+    private String nextCursor;
+}
@@ -7,7 +7,9 @@ import java.util.List;
 @Data
 public class LoanDTO {
     private Long id;
+    // Only set when loans of several customers are returned together
+    private Long customerId;
     private List<LoanInstallmentDTO> installments;
-    private int numberOfInstallments;
-    private boolean paid;
+    private Integer numberOfInstallments;
+    private Boolean paid;
 }
@@ -4,6 +4,8 @@ import lombok.Data;
 
 @Data
 public class PayLoanResponseDTO {
+    // Only set when a payment is spread over several loans
+    private Long loanId;
     private int numberOfInstallmentsPaid;
     private String totalAmountSpent;
     private boolean loanPaidCompletely;
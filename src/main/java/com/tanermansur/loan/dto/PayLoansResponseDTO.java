@@ -0,0 +1,13 @@
+package com.tanermansur.loan.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class PayLoansResponseDTO {
+    private int numberOfInstallmentsPaid;
+    private String totalAmountSpent;
+    // One entry per loan the payment reached, in the order they were reached
+    private List<PayLoanResponseDTO> loans;
+}
@@ -4,8 +4,11 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Version;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
@@ -14,6 +17,7 @@ import java.util.Collection;
 import java.util.Collections;
 
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "customer")
 @Getter
 @Setter
 public class Customer implements UserDetails, GrantedAuthority {
@@ -24,6 +28,9 @@ public class Customer implements UserDetails, GrantedAuthority {
     private String surname;
     private BigDecimal creditLimit;
     private BigDecimal usedCreditLimit;
+    // Moves with every change of the limits, including the conditional updates charging and releasing them
+    @Version
+    private long version;
 
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
@@ -3,25 +3,35 @@ package com.tanermansur.loan.entity;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.util.List;
 
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "loan")
+@Table(indexes = @Index(name = "idx_loan_customer_paid_installments", columnList = "customer_id, paid, number_of_installments"))
 @Getter
 @Setter
 public class Loan {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_seq")
+    @SequenceGenerator(name = "loan_seq", sequenceName = "loan_seq", allocationSize = 50)
     private long id;
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "customer_id")
     private Customer customer;
     private BigDecimal loanAmount;
     private int numberOfInstallments;
     private Timestamp createDate;
     private boolean paid;
-    @OneToMany(fetch = FetchType.EAGER, mappedBy = "loan", cascade = CascadeType.ALL)
+    @OneToMany(mappedBy = "loan", cascade = CascadeType.ALL)
+    @OrderBy("dueDate")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "loan-installments")
     private List<LoanInstallment> installments;
+    // Moves with every payment, responses of the loan and its installments are validated against it
+    @Version
+    private long version;
 }
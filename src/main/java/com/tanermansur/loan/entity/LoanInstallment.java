@@ -4,18 +4,23 @@ import jakarta.persistence.*;
 import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.math.BigDecimal;
 import java.sql.Date;
 
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "loan-installment")
+@Table(indexes = @Index(name = "idx_loan_installment_loan_due_date", columnList = "loan_id, due_date"))
 @Getter
 @Setter
 public class LoanInstallment {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_installment_seq")
+    @SequenceGenerator(name = "loan_installment_seq", sequenceName = "loan_installment_seq", allocationSize = 50)
     private long id;
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "loan_id")
     private Loan loan;
     private BigDecimal amount;
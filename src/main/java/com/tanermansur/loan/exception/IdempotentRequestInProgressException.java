@@ -0,0 +1,8 @@
+package com.tanermansur.loan.exception;
+
+// The first request with the same key is still running, the retry can be sent again later
+public class IdempotentRequestInProgressException extends RuntimeException {
+    public IdempotentRequestInProgressException(String key) {
+        super(String.format("A request with idempotency key [%s] is still in progress, please retry", key));
+    }
+}
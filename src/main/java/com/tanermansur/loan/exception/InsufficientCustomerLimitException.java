@@ -3,17 +3,15 @@ package com.tanermansur.loan.exception;
 import com.tanermansur.loan.entity.Customer;
 
 import java.math.BigDecimal;
-import java.text.NumberFormat;
 import java.util.Optional;
+import java.util.function.Function;
 
 public class InsufficientCustomerLimitException extends AbstractLoanException {
-    private static final NumberFormat nf = NumberFormat.getCurrencyInstance();
-
-    public InsufficientCustomerLimitException(Customer customer, BigDecimal loanAmount) {
+    public InsufficientCustomerLimitException(Customer customer, BigDecimal loanAmount, Function<BigDecimal, String> amountFormat) {
         super(String.format("Customer with [customerId: %d, creditLimit: %s, usedCreditLimit: %s] does not have enough limit to cover [loanAmount: %s]",
                 customer.getId(),
-                nf.format(customer.getCreditLimit()),
-                nf.format(Optional.ofNullable(customer.getUsedCreditLimit()).orElse(BigDecimal.ZERO)),
-                nf.format(loanAmount)));
+                amountFormat.apply(customer.getCreditLimit()),
+                amountFormat.apply(Optional.ofNullable(customer.getUsedCreditLimit()).orElse(BigDecimal.ZERO)),
+                amountFormat.apply(loanAmount)));
     }
 }
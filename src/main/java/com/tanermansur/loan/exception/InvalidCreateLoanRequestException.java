@@ -1,11 +1,6 @@
 package com.tanermansur.loan.exception;
 
-import java.math.BigDecimal;
-import java.text.NumberFormat;
-
 public class InvalidCreateLoanRequestException extends AbstractLoanException {
-    private static final NumberFormat nf = NumberFormat.getCurrencyInstance();
-
     private InvalidCreateLoanRequestException(String message) {
         super(message);
     }
@@ -28,7 +23,7 @@ public class InvalidCreateLoanRequestException extends AbstractLoanException {
         return new InvalidCreateLoanRequestException("Loan amount cannot be omitted");
     }
 
-    public static InvalidCreateLoanRequestException withInvalidLoanAmount(BigDecimal loanAmount) {
-        return new InvalidCreateLoanRequestException(String.format("Loan amount [%s] must be greater than zero", nf.format(loanAmount)));
+    public static InvalidCreateLoanRequestException withInvalidLoanAmount(String loanAmount) {
+        return new InvalidCreateLoanRequestException(String.format("Loan amount [%s] must be greater than zero", loanAmount));
     }
 }
@@ -0,0 +1,22 @@
+package com.tanermansur.loan.exception;
+
+import java.util.Collection;
+
+public class InvalidGetLoansRequestException extends AbstractLoanException {
+    private InvalidGetLoansRequestException(String message) {
+        super(message);
+    }
+
+    public static InvalidGetLoansRequestException withInvalidCursor(String cursor) {
+        return new InvalidGetLoansRequestException(String.format("Invalid get loans request with an invalid cursor [%s]", cursor));
+    }
+
+    public static InvalidGetLoansRequestException withInvalidPageSize(int pageSize) {
+        return new InvalidGetLoansRequestException(String.format("Invalid get loans request with an invalid page size [%d]", pageSize));
+    }
+
+    public static InvalidGetLoansRequestException withUnknownFields(Collection<String> fields, Collection<String> knownFields) {
+        return new InvalidGetLoansRequestException(String.format("Invalid get loans request with unknown fields %s, known fields are %s",
+                fields, knownFields));
+    }
+}
@@ -0,0 +1,15 @@
+package com.tanermansur.loan.exception;
+
+public class InvalidIdempotencyKeyException extends AbstractLoanException {
+    private InvalidIdempotencyKeyException(String message) {
+        super(message);
+    }
+
+    public static InvalidIdempotencyKeyException withTooLongKey(int maximumLength) {
+        return new InvalidIdempotencyKeyException(String.format("Invalid idempotency key longer than %d characters", maximumLength));
+    }
+
+    public static InvalidIdempotencyKeyException withDifferentRequest(String key) {
+        return new InvalidIdempotencyKeyException(String.format("Invalid idempotency key [%s] already used for a different request", key));
+    }
+}
@@ -1,11 +1,6 @@
 package com.tanermansur.loan.exception;
 
-import java.math.BigDecimal;
-import java.text.NumberFormat;
-
 public class InvalidPayLoanRequestException extends AbstractLoanException {
-    private static final NumberFormat nf = NumberFormat.getCurrencyInstance();
-
     private InvalidPayLoanRequestException(String message) {
         super(message);
     }
@@ -18,7 +13,7 @@ public class InvalidPayLoanRequestException extends AbstractLoanException {
         return new InvalidPayLoanRequestException(String.format("Invalid pay loan request with a non-numeric amount [%s]", amount));
     }
 
-    public static InvalidPayLoanRequestException withInvalidAmount(BigDecimal amount) {
-        return new InvalidPayLoanRequestException(String.format("Invalid pay loan request with an invalid amount [%s]", nf.format(amount)));
+    public static InvalidPayLoanRequestException withInvalidAmount(String amount) {
+        return new InvalidPayLoanRequestException(String.format("Invalid pay loan request with an invalid amount [%s]", amount));
     }
 }
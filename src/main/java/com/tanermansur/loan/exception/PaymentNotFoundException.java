@@ -0,0 +1,7 @@
+package com.tanermansur.loan.exception;
+
+public class PaymentNotFoundException extends AbstractLoanException {
+    public PaymentNotFoundException(String paymentId) {
+        super(String.format("Payment with [paymentId: %s] not found", paymentId));
+    }
+}
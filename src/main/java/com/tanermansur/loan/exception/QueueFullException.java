@@ -0,0 +1,25 @@
+package com.tanermansur.loan.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+// Not a client error, the same request can be sent again once the queue has room
+@Getter
+public class QueueFullException extends RuntimeException {
+    private final Duration retryAfter;
+
+    private QueueFullException(String message, Duration retryAfter) {
+        super(message);
+
+        this.retryAfter = retryAfter;
+    }
+
+    public static QueueFullException withPaymentQueue(Duration retryAfter) {
+        return new QueueFullException("Too many payments are waiting to be applied, please retry later", retryAfter);
+    }
+
+    public static QueueFullException withWriteLane(Duration retryAfter) {
+        return new QueueFullException("Too many requests of the customer are waiting to be run, please retry later", retryAfter);
+    }
+}
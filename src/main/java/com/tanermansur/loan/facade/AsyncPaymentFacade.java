@@ -0,0 +1,267 @@
+package com.tanermansur.loan.facade;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tanermansur.loan.dto.AsyncPaymentDTO;
+import com.tanermansur.loan.dto.PayLoanRequestDTO;
+import com.tanermansur.loan.dto.PayLoanResponseDTO;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.exception.AbstractLoanException;
+import com.tanermansur.loan.exception.PaymentNotFoundException;
+import com.tanermansur.loan.exception.QueueFullException;
+import com.tanermansur.loan.money.Money;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CustomizableThreadCreator;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Accepts payments to be applied later, so that a burst of payments is acknowledged at once and applied at the pace
+ * the database allows. Payments are queued to the partition of their loan, and each partition is drained by a single
+ * thread that applies all the queued payments of a customer to a loan in one transaction, in the order they were
+ * accepted. Queues are bounded, a payment that finds its queue full is refused rather than held. Outcomes are kept
+ * for a while to be polled by payment id.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class AsyncPaymentFacade {
+    private final LoanFacade loanFacade;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${loan.async-payment.partitions:4}")
+    private int partitions;
+
+    @Value("${loan.async-payment.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${loan.async-payment.batch-size:100}")
+    private int batchSize;
+
+    @Value("${loan.async-payment.offer-timeout:50ms}")
+    private Duration offerTimeout;
+
+    @Value("${loan.async-payment.retry-after:1s}")
+    private Duration retryAfter;
+
+    @Value("${loan.async-payment.shutdown-timeout:30s}")
+    private Duration shutdownTimeout;
+
+    @Value("${loan.async-payment.outcome-cache.maximum-size:100000}")
+    private long outcomeCacheMaximumSize;
+
+    @Value("${loan.async-payment.outcome-cache.time-to-live:1h}")
+    private Duration outcomeCacheTimeToLive;
+
+    private final List<BlockingQueue<QueuedPayment>> queues = new ArrayList<>();
+
+    // Pending payments are bounded by the queues, outcomes by the cache
+    private final Map<String, TrackedPayment> pendingPayments = new ConcurrentHashMap<>();
+    private Cache<String, TrackedPayment> outcomes;
+
+    private ExecutorService executorService;
+    private Counter rejectedPayments;
+    private DistributionSummary batchSizes;
+    private volatile boolean accepting;
+
+    @PostConstruct
+    public void init() {
+        outcomes = Caffeine.newBuilder()
+                .maximumSize(outcomeCacheMaximumSize)
+                .expireAfterWrite(outcomeCacheTimeToLive)
+                .build();
+
+        rejectedPayments = Counter.builder("loan.async-payment.rejected")
+                .description("Payments refused because their queue was full")
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("loan.async-payment.batch.size")
+                .description("Payments of a loan applied in one transaction")
+                .register(meterRegistry);
+
+        CustomizableThreadCreator threadCreator = new CustomizableThreadCreator("async-payment-");
+        executorService = Executors.newFixedThreadPool(partitions, threadCreator::createThread);
+
+        for (int i = 0; i < partitions; i++) {
+            BlockingQueue<QueuedPayment> queue = new ArrayBlockingQueue<>(queueCapacity);
+
+            queues.add(queue);
+            Gauge.builder("loan.async-payment.queue.depth", queue, Collection::size)
+                    .description("Payments waiting to be applied")
+                    .tag("partition", Integer.toString(i))
+                    .register(meterRegistry);
+            executorService.execute(() -> drain(queue));
+        }
+
+        accepting = true;
+    }
+
+    // Stops accepting payments and gives the queued ones a chance to be applied
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        accepting = false;
+
+        for (BlockingQueue<QueuedPayment> queue : queues) {
+            if (!queue.offer(QueuedPayment.END, shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                break;
+            }
+        }
+
+        executorService.shutdown();
+        if (!executorService.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("{} accepted payments were not applied before shutdown", queues.stream().mapToInt(Collection::size).sum());
+
+            executorService.shutdownNow();
+        }
+    }
+
+    // The amount is validated here, so that an invalid payment is refused rather than accepted and then failed
+    public AsyncPaymentDTO submitPayment(Customer customer, long loanId, PayLoanRequestDTO request) {
+        Money paymentAmount = loanFacade.validatePaymentAmount(request.getAmount());
+
+        AsyncPaymentDTO paymentDTO = new AsyncPaymentDTO();
+
+        paymentDTO.setPaymentId(UUID.randomUUID().toString());
+        paymentDTO.setLoanId(loanId);
+        paymentDTO.setStatus(AsyncPaymentDTO.Status.PENDING);
+
+        TrackedPayment payment = new TrackedPayment(customer.getId(), paymentDTO);
+        QueuedPayment queuedPayment = new QueuedPayment(payment, customer, loanId, paymentAmount, LocaleContextHolder.getLocale());
+
+        // Tracked before it is queued, so that it can always be found once it has been applied
+        pendingPayments.put(paymentDTO.getPaymentId(), payment);
+
+        boolean queued = false;
+        try {
+            queued = accepting && queues.get(Math.floorMod(Long.hashCode(loanId), partitions))
+                    .offer(queuedPayment, offerTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!queued) {
+            pendingPayments.remove(paymentDTO.getPaymentId());
+            rejectedPayments.increment();
+
+            throw QueueFullException.withPaymentQueue(retryAfter);
+        }
+
+        return paymentDTO;
+    }
+
+    public AsyncPaymentDTO getPayment(Customer customer, String paymentId) {
+        TrackedPayment payment = pendingPayments.get(paymentId);
+
+        if (payment == null) {
+            payment = outcomes.getIfPresent(paymentId);
+        }
+
+        if (payment == null || !payment.customerId().equals(customer.getId())) {
+            throw new PaymentNotFoundException(paymentId);
+        }
+
+        return payment.paymentDTO();
+    }
+
+    private void drain(BlockingQueue<QueuedPayment> queue) {
+        List<QueuedPayment> batch = new ArrayList<>(batchSize);
+
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+
+                boolean end = batch.remove(QueuedPayment.END);
+
+                // Payments of a loan keep their order. Ownership is only checked when they are applied, so those of another
+                // customer are applied apart, failing on their own rather than running as the owner or failing the owner's
+                Map<LoanPaymentKey, List<QueuedPayment>> paymentsByLoan = new LinkedHashMap<>();
+                for (QueuedPayment queuedPayment : batch) {
+                    paymentsByLoan.computeIfAbsent(new LoanPaymentKey(queuedPayment.customer().getId(), queuedPayment.loanId()), key -> new ArrayList<>()).add(queuedPayment);
+                }
+
+                for (List<QueuedPayment> loanPayments : paymentsByLoan.values()) {
+                    payLoan(loanPayments);
+                }
+
+                batch.clear();
+
+                if (end) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Amounts are formatted in the locale of the first payment of the batch
+    private void payLoan(List<QueuedPayment> loanPayments) {
+        QueuedPayment firstPayment = loanPayments.get(0);
+
+        List<PayLoanResponseDTO> responseDTOs = null;
+        String error = null;
+
+        LocaleContextHolder.setLocale(firstPayment.locale());
+        try {
+            responseDTOs = loanFacade.payLoanInTurn(firstPayment.customer(), firstPayment.loanId(), loanPayments.stream().map(QueuedPayment::amount).toList());
+        } catch (AbstractLoanException e) {
+            error = e.getLocalizedMessage();
+        } catch (RuntimeException e) {
+            log.warn("{} payments of loan {} could not be applied", loanPayments.size(), firstPayment.loanId(), e);
+
+            error = String.format("Payment could not be applied: %s", e.getMessage());
+        } catch (Error e) {
+            // Letting it through would end the partition's only thread, and its queue would keep accepting payments
+            // that are never applied
+            log.error("{} payments of loan {} could not be applied", loanPayments.size(), firstPayment.loanId(), e);
+
+            error = String.format("Payment could not be applied: %s", e.getMessage());
+        } finally {
+            LocaleContextHolder.resetLocaleContext();
+        }
+
+        batchSizes.record(loanPayments.size());
+
+        for (int i = 0; i < loanPayments.size(); i++) {
+            TrackedPayment payment = loanPayments.get(i).payment();
+            AsyncPaymentDTO paymentDTO = new AsyncPaymentDTO();
+
+            paymentDTO.setPaymentId(payment.paymentDTO().getPaymentId());
+            paymentDTO.setLoanId(payment.paymentDTO().getLoanId());
+
+            if (responseDTOs != null) {
+                paymentDTO.setStatus(AsyncPaymentDTO.Status.COMPLETED);
+                paymentDTO.setPayment(responseDTOs.get(i));
+            } else {
+                paymentDTO.setStatus(AsyncPaymentDTO.Status.FAILED);
+                paymentDTO.setError(error);
+            }
+
+            // Published before the pending entry goes away, so that polling never misses it
+            outcomes.put(paymentDTO.getPaymentId(), new TrackedPayment(payment.customerId(), paymentDTO));
+            pendingPayments.remove(paymentDTO.getPaymentId());
+        }
+    }
+
+    private record LoanPaymentKey(Long customerId, long loanId) {
+    }
+
+    private record TrackedPayment(Long customerId, AsyncPaymentDTO paymentDTO) {
+    }
+
+    private record QueuedPayment(TrackedPayment payment, Customer customer, long loanId, Money amount, Locale locale) {
+        private static final QueuedPayment END = new QueuedPayment(null, null, 0, null, null);
+    }
+}
@@ -0,0 +1,181 @@
+package com.tanermansur.loan.facade;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.tanermansur.loan.context.CreateLoanContext;
+import com.tanermansur.loan.dto.BulkCreateLoanResultDTO;
+import com.tanermansur.loan.dto.CreateLoanRequestDTO;
+import com.tanermansur.loan.dto.GetLoansRequestDTO;
+import com.tanermansur.loan.dto.LoanDTO;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.entity.Loan;
+import com.tanermansur.loan.exception.AbstractLoanException;
+import com.tanermansur.loan.exception.InsufficientCustomerLimitException;
+import com.tanermansur.loan.mapper.FieldSelection;
+import com.tanermansur.loan.mapper.LoanMapper;
+import com.tanermansur.loan.service.CustomerService;
+import com.tanermansur.loan.service.FormattingService;
+import com.tanermansur.loan.service.LoanService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class BulkLoanFacade {
+    private final LoanFacade loanFacade;
+    private final CustomerService customerService;
+    private final LoanService loanService;
+    private final LoanMapper loanMapper;
+    private final FormattingService formattingService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${loan.bulk.chunk-size:500}")
+    private int chunkSize;
+
+    // Reads a JSON array or NDJSON stream of requests and creates the valid ones in chunked transactions, in order
+    public List<BulkCreateLoanResultDTO> createLoans(Customer customer, InputStream requests) throws IOException {
+        Customer borrower = customerService.loadCustomer(customer);
+
+        List<BulkCreateLoanResultDTO> results = new ArrayList<>();
+        List<BulkItem> chunk = new ArrayList<>(chunkSize);
+
+        try (MappingIterator<CreateLoanRequestDTO> iterator = objectMapper.readerFor(CreateLoanRequestDTO.class).readValues(requests)) {
+            while (true) {
+                BulkCreateLoanResultDTO result = new BulkCreateLoanResultDTO();
+                result.setIndex(results.size());
+
+                CreateLoanRequestDTO request;
+                try {
+                    if (!iterator.hasNextValue()) {
+                        break;
+                    }
+
+                    request = iterator.nextValue();
+                } catch (JsonProcessingException e) {
+                    // The rest of the stream cannot be read reliably, report it on this item and stop
+                    result.setError(e.getOriginalMessage());
+                    results.add(result);
+
+                    break;
+                }
+
+                results.add(result);
+
+                try {
+                    chunk.add(new BulkItem(loanFacade.newCreateLoanContext(borrower, request), result));
+                } catch (AbstractLoanException e) {
+                    result.setError(e.getLocalizedMessage());
+                }
+
+                if (chunk.size() == chunkSize) {
+                    createChunk(chunk);
+                    chunk.clear();
+                }
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            createChunk(chunk);
+        }
+
+        return results;
+    }
+
+    private void createChunk(List<BulkItem> chunk) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (BulkItem item : chunk) {
+                    CreateLoanContext context = item.context();
+
+                    if (!customerService.tryReserveCreditLimit(context.getCustomer(), context.getLoanAmount(), context.getAmountToBePaidBack())) {
+                        item.result().setError(new InsufficientCustomerLimitException(context.getCustomer(), context.getLoanAmount().toBigDecimal(), formattingService::formatAmount).getLocalizedMessage());
+
+                        continue;
+                    }
+
+                    loanService.createLoan(context);
+
+                    item.result().setLoanId(context.getLoan().getId());
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("bulk loan chunk of {} items rolled back", chunk.size(), e);
+
+            for (BulkItem item : chunk) {
+                if (item.result().getError() == null) {
+                    item.result().setLoanId(null);
+                    item.result().setError(String.format("Loan could not be created: %s", e.getMessage()));
+                }
+            }
+        }
+    }
+
+    public StreamingResponseBody exportLoans(Customer customer, GetLoansRequestDTO request) {
+        return exportLoans(customer.getId(), LoanFacade.selectLoanFields(request), false);
+    }
+
+    // Loans of all customers, each carrying its customer id
+    public StreamingResponseBody exportAllLoans(GetLoansRequestDTO request) {
+        return exportLoans(null, LoanFacade.selectLoanFields(request), true);
+    }
+
+    // Fields are validated before the body is returned, so that a bad request fails while an error response can still be sent
+    private StreamingResponseBody exportLoans(Long customerId, FieldSelection fields, boolean withCustomerId) {
+        // The body is written on another thread, amounts are still formatted for the locale of the request
+        Locale locale = LocaleContextHolder.getLocale();
+
+        return outputStream -> {
+            LocaleContextHolder.setLocale(locale);
+
+            try (JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+                ObjectWriter writer = objectMapper.writerFor(LoanDTO.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+                // Records are separated by new lines alone
+                generator.setRootValueSeparator(null);
+
+                loanService.exportLoans(customerId, fields.includes(LoanMapper.INSTALLMENTS), chunk -> {
+                    try {
+                        for (Loan loan : chunk) {
+                            LoanDTO loanDTO = loanMapper.toLoanDTO(loan, fields);
+
+                            if (withCustomerId) {
+                                loanDTO.setCustomerId(loan.getCustomer().getId());
+                            }
+
+                            writer.writeValue(generator, loanDTO);
+                            generator.writeRaw('\n');
+                        }
+
+                        // Each chunk reaches the client as soon as it is mapped
+                        generator.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } finally {
+                LocaleContextHolder.resetLocaleContext();
+            }
+        };
+    }
+
+    private record BulkItem(CreateLoanContext context, BulkCreateLoanResultDTO result) {
+    }
+}
@@ -0,0 +1,369 @@
+package com.tanermansur.loan.facade;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanermansur.loan.dto.BulkPayLoanReportDTO;
+import com.tanermansur.loan.dto.BulkPayLoanRequestDTO;
+import com.tanermansur.loan.dto.BulkPayLoanResultDTO;
+import com.tanermansur.loan.dto.PayLoanRequestDTO;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.exception.AbstractLoanException;
+import com.tanermansur.loan.exception.LoanNotFoundException;
+import com.tanermansur.loan.service.CustomerService;
+import com.tanermansur.loan.service.LoanService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.CustomizableThreadCreator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies settlement files of payments across customers. The file is read as a stream and every payment is handed to
+ * the partition of its customer, each partition applying its payments in file order on its own thread in chunked
+ * transactions. Partition queues are bounded, so reading waits for the slowest partition and memory stays flat
+ * whatever the size of the file. Outcomes are written to an NDJSON report file as chunks complete.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class BulkPayLoanFacade {
+    public static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
+    private static final String CSV_HEADER = "customerId,loanId,amount";
+
+    private final LoanFacade loanFacade;
+    private final CustomerService customerService;
+    private final LoanService loanService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${loan.bulk-payment.parallelism:4}")
+    private int parallelism;
+
+    @Value("${loan.bulk-payment.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${loan.bulk-payment.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${loan.bulk-payment.report-directory:${java.io.tmpdir}}")
+    private Path reportDirectory;
+
+    private ExecutorService executorService;
+
+    @PostConstruct
+    public void init() {
+        CustomizableThreadCreator threadCreator = new CustomizableThreadCreator("bulk-payment-");
+
+        executorService = Executors.newFixedThreadPool(parallelism, threadCreator::createThread);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executorService.shutdownNow();
+    }
+
+    // Reads CSV lines of customerId,loanId,amount (with an optional header) or an NDJSON stream of the same fields
+    public BulkPayLoanReportDTO payLoans(InputStream payments, MediaType contentType) throws IOException {
+        Path reportFile = Files.createTempFile(reportDirectory, "bulk-payment-", ".ndjson");
+
+        try (Writer report = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+            Ingestion ingestion = new Ingestion(report, LocaleContextHolder.getLocale());
+
+            try {
+                if (TEXT_CSV.isCompatibleWith(contentType)) {
+                    readCsv(payments, ingestion);
+                } else {
+                    readNdjson(payments, ingestion);
+                }
+            } finally {
+                ingestion.finish();
+            }
+
+            BulkPayLoanReportDTO reportDTO = new BulkPayLoanReportDTO();
+
+            reportDTO.setReportFile(reportFile.toString());
+            reportDTO.setNumberOfPayments(ingestion.numberOfPayments);
+            reportDTO.setNumberOfPaymentsApplied(ingestion.applied.get());
+            reportDTO.setNumberOfPaymentsFailed(ingestion.failed.get());
+
+            return reportDTO;
+        }
+    }
+
+    private void readCsv(InputStream payments, Ingestion ingestion) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(payments, StandardCharsets.UTF_8));
+
+        String line = reader.readLine();
+        if (line != null && line.strip().equalsIgnoreCase(CSV_HEADER)) {
+            line = reader.readLine();
+        }
+
+        for (; line != null; line = reader.readLine()) {
+            if (line.isBlank()) {
+                continue;
+            }
+
+            BulkPayLoanResultDTO result = ingestion.newResult();
+            String[] fields = line.split(",", -1);
+
+            if (fields.length != 3) {
+                ingestion.reject(result, String.format("Payment line [%s] must have the fields %s", line, CSV_HEADER));
+
+                continue;
+            }
+
+            BulkPayLoanRequestDTO request = new BulkPayLoanRequestDTO();
+
+            try {
+                request.setCustomerId(Long.parseLong(fields[0].strip()));
+                request.setLoanId(Long.parseLong(fields[1].strip()));
+            } catch (NumberFormatException e) {
+                ingestion.reject(result, String.format("Payment line [%s] has a non-numeric customer or loan id", line));
+
+                continue;
+            }
+
+            request.setAmount(fields[2].strip());
+            ingestion.submit(result, request);
+        }
+    }
+
+    private void readNdjson(InputStream payments, Ingestion ingestion) throws IOException {
+        try (MappingIterator<BulkPayLoanRequestDTO> iterator = objectMapper.readerFor(BulkPayLoanRequestDTO.class).readValues(payments)) {
+            while (true) {
+                BulkPayLoanRequestDTO request;
+                try {
+                    if (!iterator.hasNextValue()) {
+                        break;
+                    }
+
+                    request = iterator.nextValue();
+                } catch (JsonProcessingException e) {
+                    // The rest of the stream cannot be read reliably, report it on this item and stop
+                    ingestion.reject(ingestion.newResult(), e.getOriginalMessage());
+
+                    break;
+                }
+
+                BulkPayLoanResultDTO result = ingestion.newResult();
+
+                if (request.getCustomerId() == null || request.getLoanId() == null) {
+                    ingestion.reject(result, "Payment must have a customerId and a loanId");
+                } else {
+                    ingestion.submit(result, request);
+                }
+            }
+        }
+    }
+
+    private record BulkItem(BulkPayLoanResultDTO result, BulkPayLoanRequestDTO request) {
+    }
+
+    // State of one file, shared by the reading thread and the partitions
+    private class Ingestion {
+        private static final BulkItem END = new BulkItem(null, null);
+
+        private final Writer report;
+        private final Locale locale;
+        private final List<BlockingQueue<BulkItem>> partitions = new ArrayList<>(parallelism);
+        private final List<Future<?>> workers = new ArrayList<>(parallelism);
+        private final AtomicLong applied = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private long numberOfPayments;
+
+        Ingestion(Writer report, Locale locale) {
+            this.report = report;
+            this.locale = locale;
+
+            for (int i = 0; i < parallelism; i++) {
+                BlockingQueue<BulkItem> partition = new ArrayBlockingQueue<>(queueCapacity);
+
+                partitions.add(partition);
+                workers.add(executorService.submit(() -> {
+                    drain(partition);
+
+                    return null;
+                }));
+            }
+        }
+
+        BulkPayLoanResultDTO newResult() {
+            BulkPayLoanResultDTO result = new BulkPayLoanResultDTO();
+
+            result.setIndex(numberOfPayments++);
+
+            return result;
+        }
+
+        void reject(BulkPayLoanResultDTO result, String error) throws IOException {
+            result.setError(error);
+            failed.incrementAndGet();
+
+            write(List.of(result));
+        }
+
+        // All payments of a customer, hence of a loan, go to the same partition and are applied in file order
+        void submit(BulkPayLoanResultDTO result, BulkPayLoanRequestDTO request) throws IOException {
+            result.setCustomerId(request.getCustomerId());
+            result.setLoanId(request.getLoanId());
+
+            put(partitions.get(Math.floorMod(Long.hashCode(request.getCustomerId()), parallelism)), new BulkItem(result, request));
+        }
+
+        void finish() throws IOException {
+            try {
+                for (BlockingQueue<BulkItem> partition : partitions) {
+                    put(partition, END);
+                }
+
+                for (Future<?> worker : workers) {
+                    try {
+                        worker.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+
+                        throw new InterruptedIOException("Interrupted while waiting for payments to be applied");
+                    } catch (ExecutionException e) {
+                        log.error("bulk payment partition failed", e.getCause());
+                    }
+                }
+            } catch (InterruptedIOException e) {
+                // Workers that never get the end of the file would wait for it forever and hold the shared pool
+                for (Future<?> worker : workers) {
+                    worker.cancel(true);
+                }
+
+                throw e;
+            }
+        }
+
+        private void put(BlockingQueue<BulkItem> partition, BulkItem item) throws IOException {
+            try {
+                partition.put(item);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new InterruptedIOException("Interrupted while queueing payments");
+            }
+        }
+
+        // Applies whatever is queued, up to a chunk, in one transaction until the end of the file is reached. The queue is
+        // always drained to the end, otherwise reading the file would wait on it forever.
+        private void drain(BlockingQueue<BulkItem> partition) throws InterruptedException {
+            LocaleContextHolder.setLocale(locale);
+
+            try {
+                List<BulkItem> chunk = new ArrayList<>(chunkSize);
+
+                while (true) {
+                    chunk.add(partition.take());
+                    partition.drainTo(chunk, chunkSize - 1);
+
+                    boolean end = chunk.remove(END);
+                    if (!chunk.isEmpty()) {
+                        try {
+                            payChunk(chunk);
+                        } catch (IOException e) {
+                            log.error("bulk payment report could not be written", e);
+                        }
+
+                        chunk.clear();
+                    }
+
+                    if (end) {
+                        return;
+                    }
+                }
+            } finally {
+                LocaleContextHolder.resetLocaleContext();
+            }
+        }
+
+        // A failed chunk is reported and skipped, the partition carries on with the next one
+        private void payChunk(List<BulkItem> chunk) throws IOException {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    for (BulkItem item : chunk) {
+                        try {
+                            Customer customer = new Customer();
+                            customer.setId(item.request().getCustomerId());
+                            customer = customerService.loadCustomer(customer);
+
+                            // An unknown loan failing inside payLoan would mark the whole chunk rollback-only, so it is
+                            // turned down before the payment joins the transaction
+                            long loanId = item.request().getLoanId();
+                            if (!loanService.isCustomerLoan(customer, loanId)) {
+                                throw new LoanNotFoundException(loanId);
+                            }
+
+                            PayLoanRequestDTO request = new PayLoanRequestDTO();
+                            request.setAmount(item.request().getAmount());
+
+                            item.result().setPayment(loanFacade.payLoan(customer, loanId, request));
+                        } catch (AbstractLoanException e) {
+                            item.result().setError(e.getLocalizedMessage());
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                log.warn("bulk payment chunk of {} items rolled back", chunk.size(), e);
+
+                failChunk(chunk, e);
+            } catch (Error e) {
+                // Letting it through would end the partition's worker, and reading the file would wait on its queue forever
+                log.error("bulk payment chunk of {} items rolled back", chunk.size(), e);
+
+                failChunk(chunk, e);
+            }
+
+            List<BulkPayLoanResultDTO> results = new ArrayList<>(chunk.size());
+            for (BulkItem item : chunk) {
+                (item.result().getError() == null ? applied : failed).incrementAndGet();
+                results.add(item.result());
+            }
+
+            write(results);
+        }
+
+        private void failChunk(List<BulkItem> chunk, Throwable failure) {
+            for (BulkItem item : chunk) {
+                if (item.result().getError() == null) {
+                    item.result().setPayment(null);
+                    item.result().setError(String.format("Payment could not be applied: %s", failure.getMessage()));
+                }
+            }
+        }
+
+        private void write(List<BulkPayLoanResultDTO> results) throws IOException {
+            synchronized (report) {
+                for (BulkPayLoanResultDTO result : results) {
+                    report.write(objectMapper.writeValueAsString(result));
+                    report.write('\n');
+                }
+            }
+        }
+    }
+}
@@ -6,25 +6,39 @@ import com.tanermansur.loan.entity.Customer;
 import com.tanermansur.loan.entity.Loan;
 import com.tanermansur.loan.entity.LoanInstallment;
 import com.tanermansur.loan.exception.InvalidCreateLoanRequestException;
+import com.tanermansur.loan.exception.InvalidGetLoansRequestException;
 import com.tanermansur.loan.exception.InvalidPayLoanRequestException;
+import com.tanermansur.loan.mapper.FieldSelection;
+import com.tanermansur.loan.mapper.LoanMapper;
+import com.tanermansur.loan.money.Money;
+import com.tanermansur.loan.money.Rate;
+import com.tanermansur.loan.payment.PaymentAllocation;
+import com.tanermansur.loan.payment.PaymentAllocator;
 import com.tanermansur.loan.service.CustomerService;
+import com.tanermansur.loan.service.FormattingService;
 import com.tanermansur.loan.service.TimeService;
 import com.tanermansur.loan.service.LoanService;
+import com.tanermansur.loan.service.RetryService;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.sql.Date;
-import java.text.NumberFormat;
-import java.time.Duration;
 import java.time.LocalDate;
-import java.util.Currency;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.Set;
 
 @RequiredArgsConstructor
@@ -36,65 +50,71 @@ public class LoanFacade {
     private static final BigDecimal MINIMUM_INTEREST_RATE = new BigDecimal(MINIMUM_INTEREST_RATE_STRING);
     private static final String MAXIMUM_INTEREST_RATE_STRING = "0.5";
     private static final BigDecimal MAXIMUM_INTEREST_RATE = new BigDecimal(MAXIMUM_INTEREST_RATE_STRING);
-    private static final BigDecimal DISCOUNT_OR_PENALTY_COEFFICIENT = new BigDecimal("0.001");
-    private static final int DEFAULT_CURRENCY_FRACTION_DIGITS = Currency.getAvailableCurrencies()
-            .stream()
-            .findFirst()
-            .map(Currency::getDefaultFractionDigits)
-            .orElse(2);
 
     private final CustomerService customerService;
     private final TimeService timeService;
     private final LoanService loanService;
-    private final ModelMapper modelMapper;
+    private final LoanMapper loanMapper;
+    private final FormattingService formattingService;
+    private final TransactionTemplate transactionTemplate;
+    private final RetryService retryService;
 
+    // The limit is charged and the loan created in one transaction, so neither can ever be committed without the other.
+    // The loan and its installments are only flushed at commit, as one batch after the charge.
     public LoanDTO createLoan(Customer customer, CreateLoanRequestDTO request) {
         CreateLoanContext context = newCreateLoanContext(customer, request);
 
-        customerService.checkInsufficientCustomerLimit(customer, context.getLoanAmount());
+        retryService.retryOnConflict("createLoan", () -> transactionTemplate.execute(status -> {
+            customerService.reserveCreditLimit(context.getCustomer(), context.getLoanAmount(), context.getAmountToBePaidBack());
 
-        loanService.createLoan(context);
+            loanService.createLoan(context);
 
-        BigDecimal totalAmountToPay = context.getLoan().getInstallments().stream()
-                .map(LoanInstallment::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+            return context.getLoan();
+        }));
 
-        context.getLoan().getCustomer()
-                .setUsedCreditLimit(Optional.ofNullable(context.getLoan().getCustomer().getUsedCreditLimit())
-                        .orElse(BigDecimal.ZERO)
-                        .add(totalAmountToPay));
-
-        customerService.updateCustomer(context.getLoan().getCustomer());
-
-        return context.toLoanDTO();
+        return loanMapper.toLoanDTO(context.getLoan());
     }
 
-    private CreateLoanContext newCreateLoanContext(Customer customer, CreateLoanRequestDTO request) {
+    CreateLoanContext newCreateLoanContext(Customer customer, CreateLoanRequestDTO request) {
         validateNumberOfInstallments(request.getNumberOfInstallments());
-        BigDecimal interestRate = validateInterestRate(request.getInterestRate());
-        validateLoanAmount(request.getLoanAmount());
+        Rate interestRate = validateInterestRate(request.getInterestRate());
+        Money loanAmount = validateLoanAmount(request.getLoanAmount());
 
-        return CreateLoanContext.builder()
+        CreateLoanContext context = CreateLoanContext.builder()
                 .now(timeService.now())
-                .customer(customer)
-                .loanAmount(request.getLoanAmount())
+                .customer(customerService.loadCustomer(customer))
+                .loanAmount(loanAmount)
                 .numberOfInstallments(request.getNumberOfInstallments())
                 .interestRate(interestRate)
-                .currencyFractionDigits(DEFAULT_CURRENCY_FRACTION_DIGITS)
                 .build();
+
+        try {
+            context.calculateInstallmentAmounts();
+        } catch (ArithmeticException e) {
+            throw InvalidCreateLoanRequestException.withInvalidLoanAmount(formattingService.formatAmount(request.getLoanAmount()));
+        }
+
+        return context;
     }
 
-    private void validateLoanAmount(BigDecimal loanAmount) {
+    private Money validateLoanAmount(BigDecimal loanAmount) {
         if (loanAmount == null) {
             throw InvalidCreateLoanRequestException.withEmptyLoanAmount();
         }
 
         if (loanAmount.signum() <= 0) {
-            throw InvalidCreateLoanRequestException.withInvalidLoanAmount(loanAmount);
+            throw InvalidCreateLoanRequestException.withInvalidLoanAmount(formattingService.formatAmount(loanAmount));
+        }
+
+        try {
+            return Money.of(loanAmount, formattingService.getCurrencyFractionDigits());
+        } catch (ArithmeticException e) {
+            // Fractions of the smallest currency unit cannot be lent or charged
+            throw InvalidCreateLoanRequestException.withInvalidLoanAmount(formattingService.formatAmount(loanAmount));
         }
     }
 
-    private static BigDecimal validateInterestRate(String interestRate) {
+    private static Rate validateInterestRate(String interestRate) {
         if (!StringUtils.hasText(interestRate)) {
             throw InvalidCreateLoanRequestException.withEmptyInterestRate();
         }
@@ -106,8 +126,8 @@ public class LoanFacade {
                 throw InvalidCreateLoanRequestException.withInvalidInterestRate(interestRate, MINIMUM_INTEREST_RATE_STRING, MAXIMUM_INTEREST_RATE_STRING);
             }
 
-            return value;
-        } catch (NumberFormatException e) {
+            return Rate.of(value);
+        } catch (NumberFormatException | ArithmeticException e) {
             throw InvalidCreateLoanRequestException.withInvalidInterestRate(interestRate, MINIMUM_INTEREST_RATE_STRING, MAXIMUM_INTEREST_RATE_STRING);
         }
     }
@@ -119,76 +139,252 @@ public class LoanFacade {
     }
 
     public Page<LoanDTO> getLoans(Customer customer, GetLoansRequestDTO request, int pageSize, int page) {
-        return loanService.getLoans(customer, request, pageSize, page).map(loan -> modelMapper.map(loan, LoanDTO.class));
+        FieldSelection fields = selectLoanFields(request);
+
+        return loanService.getLoans(customer, request, pageSize, page, fields.includes(LoanMapper.INSTALLMENTS))
+                .map(loan -> loanMapper.toLoanDTO(loan, fields));
+    }
+
+    public LoanCursorPageDTO getLoans(Customer customer, GetLoansRequestDTO request, int pageSize, String cursor) {
+        if (pageSize <= 0) {
+            throw InvalidGetLoansRequestException.withInvalidPageSize(pageSize);
+        }
+
+        FieldSelection fields = selectLoanFields(request);
+        Window<Loan> loans = loanService.getLoans(customer, request, pageSize, decodeCursor(cursor), fields.includes(LoanMapper.INSTALLMENTS));
+
+        LoanCursorPageDTO pageDTO = new LoanCursorPageDTO();
+
+        pageDTO.setContent(loans.stream().map(loan -> loanMapper.toLoanDTO(loan, fields)).toList());
+
+        if (loans.hasNext()) {
+            pageDTO.setNextCursor(encodeCursor(loans.getContent().get(loans.size() - 1).getId()));
+        }
+
+        return pageDTO;
+    }
+
+    // Cursors are opaque to clients, an empty one starts from the first loan
+    private static KeysetScrollPosition decodeCursor(String cursor) {
+        if (!StringUtils.hasText(cursor)) {
+            return ScrollPosition.keyset();
+        }
+
+        try {
+            long lastLoanId = Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+
+            return ScrollPosition.forward(Map.of("id", lastLoanId));
+        } catch (IllegalArgumentException e) {
+            throw InvalidGetLoansRequestException.withInvalidCursor(cursor);
+        }
+    }
+
+    private static String encodeCursor(long lastLoanId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(lastLoanId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Without fields nor embed the response keeps its original shape, installments included
+    static FieldSelection selectLoanFields(GetLoansRequestDTO request) {
+        if (request.getFields() == null && request.getEmbed() == null) {
+            return FieldSelection.all();
+        }
+
+        validateFields(request.getEmbed(), Set.of(LoanMapper.INSTALLMENTS));
+
+        Set<String> fields = new HashSet<>();
+        if (request.getFields() == null) {
+            fields.addAll(LoanMapper.LOAN_FIELDS);
+            fields.remove(LoanMapper.INSTALLMENTS);
+        } else {
+            validateFields(request.getFields(), LoanMapper.LOAN_FIELDS);
+            fields.addAll(request.getFields());
+        }
+
+        if (request.getEmbed() != null) {
+            fields.addAll(request.getEmbed());
+        }
+
+        return FieldSelection.of(fields);
+    }
+
+    private static void validateFields(Set<String> fields, Set<String> knownFields) {
+        if (fields != null && !knownFields.containsAll(fields)) {
+            throw InvalidGetLoansRequestException.withUnknownFields(fields.stream().filter(field -> !knownFields.contains(field)).sorted().toList(),
+                    knownFields.stream().sorted().toList());
+        }
+    }
+
+    public LoanDTO getLoan(Customer customer, long loanId) {
+        return loanMapper.toLoanDTO(loanService.getLoan(customer, loanId));
+    }
+
+    // Strong validator for the loan and its installments, it changes with every payment and with the response locale
+    public String getLoanETag(Customer customer, long loanId) {
+        return String.format("\"%d-%d-%s\"", loanId, loanService.getLoanVersion(customer, loanId), formattingService.getLocale().toLanguageTag());
     }
 
     public List<LoanInstallmentDTO> getInstallments(Customer customer, long loanId) {
-        return loanService.getInstallments(customer, loanId).stream()
-                .map(loanInstallment -> modelMapper.map(loanInstallment, LoanInstallmentDTO.class))
-                .toList();
+        return getInstallments(customer, loanId, null);
+    }
+
+    public List<LoanInstallmentDTO> getInstallments(Customer customer, long loanId, Set<String> fields) {
+        validateFields(fields, LoanMapper.INSTALLMENT_FIELDS);
+
+        return loanMapper.toLoanInstallmentDTOs(loanService.getInstallments(customer, loanId), fields == null ? FieldSelection.all() : FieldSelection.of(fields));
     }
 
+    // Reads and writes in one transaction, the same as a single queued payment
     public PayLoanResponseDTO payLoan(Customer customer, long loanId, PayLoanRequestDTO request) {
+        Money paymentAmount = validatePaymentAmount(request.getAmount());
+
+        return payLoanInTurn(customer, loanId, List.of(paymentAmount)).get(0);
+    }
+
+    // Applies payments to one loan one after another, each exactly as payLoan would, but reads the installments once and
+    // writes them, the loan and the customer's limit once for all of them in one transaction
+    List<PayLoanResponseDTO> payLoanInTurn(Customer customer, long loanId, List<Money> paymentAmounts) {
         LocalDate today = timeService.localDateNow();
-        LocalDate maxDueDate = today.plusMonths(2).withDayOfMonth(1);
-        Loan loan = loanService.getLoan(customer, loanId);
-
-        BigDecimal paymentAmount = validatePaymentAmount(request.getAmount());
-        BigDecimal amountLeft = paymentAmount;
-
-        BigDecimal totalAmountSpent = BigDecimal.ZERO;
-        BigDecimal totalAmountCovered = BigDecimal.ZERO;
-        int numberOfInstallmentsPaid = 0;
-        for (LoanInstallment loanInstallment : loan.getInstallments()) {
-            if (amountLeft.signum() > 0 && !loanInstallment.isPaid() && !loanInstallment.getDueDate().toLocalDate().isAfter(maxDueDate)) {
-                BigDecimal paidAmount = loanInstallment.getAmount();
-                BigDecimal days = BigDecimal.valueOf(Duration.between(loanInstallment.getDueDate().toLocalDate().atStartOfDay(), today.atStartOfDay()).toDays());
-
-                paidAmount = paidAmount
-                        .add(loanInstallment.getAmount().multiply(DISCOUNT_OR_PENALTY_COEFFICIENT.multiply(days)))
-                        .setScale(NumberFormat.getCurrencyInstance().getCurrency().getDefaultFractionDigits(), RoundingMode.HALF_UP);
-
-                if (paidAmount.signum() < 0) {
-                    paidAmount = BigDecimal.ZERO;
-                }
-
-                if (paidAmount.compareTo(amountLeft) > 0) {
-                    break;
-                }
-
-                loanInstallment.setPaid(true);
-                loanInstallment.setPaymentDate(Date.valueOf(today));
-                loanInstallment.setPaidAmount(paidAmount);
-
-                amountLeft = amountLeft.subtract(paidAmount);
-                totalAmountSpent = totalAmountSpent.add(paidAmount);
-                totalAmountCovered = totalAmountCovered.add(loanInstallment.getAmount());
-                numberOfInstallmentsPaid++;
+
+        // A payment racing another one of the same loan is run again on what the other one left unpaid
+        return retryService.retryOnConflict("payLoan", () -> transactionTemplate.execute(status -> {
+            loanService.lockLoan(customer, loanId);
+
+            List<LoanInstallment> payableInstallments = loanService.getPayableInstallments(customer, loanId, PaymentAllocator.maxDueDate(today));
+
+            List<PaymentAllocation> allocations = new ArrayList<>(paymentAmounts.size());
+            List<LoanInstallment> paidInstallments = new ArrayList<>();
+            Money totalAmountCovered = Money.zero(formattingService.getCurrencyFractionDigits());
+
+            // Each payment covers a prefix of what the previous ones left unpaid
+            for (Money paymentAmount : paymentAmounts) {
+                PaymentAllocation allocation = PaymentAllocator.allocate(payableInstallments.subList(paidInstallments.size(), payableInstallments.size()), paymentAmount, today);
+
+                allocations.add(allocation);
+                paidInstallments.addAll(applyPayments(allocation, today));
+                totalAmountCovered = totalAmountCovered.plus(allocation.totalAmountCovered());
             }
-        }
 
-        if (amountLeft.compareTo(paymentAmount) != 0) {
-            if (loan.getInstallments().stream().allMatch(LoanInstallment::isPaid)) {
-                loan.setPaid(true);
+            boolean loanPaid;
+            if (!paidInstallments.isEmpty()) {
+                loanPaid = loanService.payInstallments(loanId, paidInstallments);
+
+                customerService.releaseCreditLimit(customer, totalAmountCovered);
+            } else {
+                loanPaid = loanService.isLoanPaid(loanId);
+            }
+
+            // Once the loan is paid off, the payment that did it and every later one see it paid, as with payLoan
+            List<PayLoanResponseDTO> responseDTOs = new ArrayList<>(allocations.size());
+            int numberOfInstallmentsPaid = 0;
+            for (PaymentAllocation allocation : allocations) {
+                numberOfInstallmentsPaid += allocation.numberOfInstallmentsPaid();
+
+                responseDTOs.add(toPayLoanResponseDTO(allocation, loanPaid && numberOfInstallmentsPaid == payableInstallments.size()));
+            }
+
+            return responseDTOs;
+        }));
+    }
+
+    // Spreads one payment over all the customer's open loans, oldest due installment first. Installments are read with
+    // one query, and they, the loans and the customer's limit are all written in one transaction.
+    public PayLoansResponseDTO payLoans(Customer customer, PayLoanRequestDTO request) {
+        LocalDate today = timeService.localDateNow();
+        Money paymentAmount = validatePaymentAmount(request.getAmount());
+
+        return retryService.retryOnConflict("payLoans", () -> transactionTemplate.execute(status -> {
+            List<LoanInstallment> payableInstallments = loanService.getPayableInstallments(customer, PaymentAllocator.maxDueDate(today));
+            PaymentAllocation allocation = PaymentAllocator.allocate(payableInstallments, paymentAmount, today);
+
+            Set<Long> paidLoanIds = Set.of();
+            if (allocation.numberOfInstallmentsPaid() > 0) {
+                paidLoanIds = loanService.payInstallments(applyPayments(allocation, today));
+
+                customerService.releaseCreditLimit(customer, allocation.totalAmountCovered());
             }
 
-            loanService.updateLoan(loan);
+            return toPayLoansResponseDTO(allocation, paidLoanIds);
+        }));
+    }
+
+    private static List<LoanInstallment> applyPayments(PaymentAllocation allocation, LocalDate today) {
+        List<LoanInstallment> paidInstallments = new ArrayList<>(allocation.numberOfInstallmentsPaid());
+
+        for (PaymentAllocation.InstallmentPayment installmentPayment : allocation.installmentPayments()) {
+            LoanInstallment loanInstallment = installmentPayment.installment();
 
-            loan.getCustomer().setUsedCreditLimit(loan.getCustomer().getUsedCreditLimit().subtract(totalAmountCovered));
+            loanInstallment.setPaid(true);
+            loanInstallment.setPaymentDate(Date.valueOf(today));
+            loanInstallment.setPaidAmount(installmentPayment.paidAmount().toBigDecimal());
 
-            customerService.updateCustomer(loan.getCustomer());
+            paidInstallments.add(loanInstallment);
         }
 
+        return paidInstallments;
+    }
+
+    // Runs the payment on the loan's schedule, which is usually served from the second-level cache, and writes nothing.
+    // The transaction is read-only, so the schedule is neither dirty-checked nor flushed when it ends.
+    public PayLoanResponseDTO quotePayment(Customer customer, long loanId, PayLoanRequestDTO request) {
+        LocalDate today = timeService.localDateNow();
+        Money paymentAmount = validatePaymentAmount(request.getAmount());
+
+        TransactionTemplate readOnlyTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnlyTransactionTemplate.setReadOnly(true);
+
+        return readOnlyTransactionTemplate.execute(status -> {
+            List<LoanInstallment> unpaidInstallments = loanService.getInstallments(customer, loanId).stream()
+                    .filter(loanInstallment -> !loanInstallment.isPaid())
+                    .toList();
+            PaymentAllocation allocation = PaymentAllocator.allocate(unpaidInstallments, paymentAmount, today);
+
+            return toPayLoanResponseDTO(allocation, allocation.numberOfInstallmentsPaid() == unpaidInstallments.size());
+        });
+    }
+
+    private PayLoanResponseDTO toPayLoanResponseDTO(PaymentAllocation allocation, boolean loanPaid) {
         PayLoanResponseDTO responseDTO = new PayLoanResponseDTO();
 
-        responseDTO.setLoanPaidCompletely(loan.isPaid());
-        responseDTO.setNumberOfInstallmentsPaid(numberOfInstallmentsPaid);
-        responseDTO.setTotalAmountSpent(NumberFormat.getCurrencyInstance().format(totalAmountSpent));
+        responseDTO.setLoanPaidCompletely(loanPaid);
+        responseDTO.setNumberOfInstallmentsPaid(allocation.numberOfInstallmentsPaid());
+        responseDTO.setTotalAmountSpent(formattingService.formatAmount(allocation.totalAmountSpent().toBigDecimal()));
+
+        return responseDTO;
+    }
+
+    private PayLoansResponseDTO toPayLoansResponseDTO(PaymentAllocation allocation, Set<Long> paidLoanIds) {
+        Map<Long, List<PaymentAllocation.InstallmentPayment>> installmentPaymentsByLoanId = new LinkedHashMap<>();
+        for (PaymentAllocation.InstallmentPayment installmentPayment : allocation.installmentPayments()) {
+            installmentPaymentsByLoanId.computeIfAbsent(installmentPayment.installment().getLoan().getId(), key -> new ArrayList<>()).add(installmentPayment);
+        }
+
+        List<PayLoanResponseDTO> loans = new ArrayList<>(installmentPaymentsByLoanId.size());
+        for (Map.Entry<Long, List<PaymentAllocation.InstallmentPayment>> entry : installmentPaymentsByLoanId.entrySet()) {
+            Money amountSpent = entry.getValue().stream()
+                    .map(PaymentAllocation.InstallmentPayment::paidAmount)
+                    .reduce(Money.zero(allocation.totalAmountSpent().fractionDigits()), Money::plus);
+
+            PayLoanResponseDTO loanDTO = new PayLoanResponseDTO();
+
+            loanDTO.setLoanId(entry.getKey());
+            loanDTO.setLoanPaidCompletely(paidLoanIds.contains(entry.getKey()));
+            loanDTO.setNumberOfInstallmentsPaid(entry.getValue().size());
+            loanDTO.setTotalAmountSpent(formattingService.formatAmount(amountSpent.toBigDecimal()));
+
+            loans.add(loanDTO);
+        }
+
+        PayLoansResponseDTO responseDTO = new PayLoansResponseDTO();
+
+        responseDTO.setNumberOfInstallmentsPaid(allocation.numberOfInstallmentsPaid());
+        responseDTO.setTotalAmountSpent(formattingService.formatAmount(allocation.totalAmountSpent().toBigDecimal()));
+        responseDTO.setLoans(loans);
 
         return responseDTO;
     }
 
-    private BigDecimal validatePaymentAmount(String amount) {
+    // Fractions of the smallest currency unit can never cover an installment, so they are left out
+    Money validatePaymentAmount(String amount) {
         BigDecimal paymentAmount;
         try {
             paymentAmount = new BigDecimal(amount);
@@ -199,9 +395,9 @@ public class LoanFacade {
         }
 
         if (paymentAmount.signum() <= 0) {
-            throw InvalidPayLoanRequestException.withInvalidAmount(paymentAmount);
+            throw InvalidPayLoanRequestException.withInvalidAmount(formattingService.formatAmount(paymentAmount));
         }
 
-        return paymentAmount;
+        return Money.of(paymentAmount, formattingService.getCurrencyFractionDigits(), RoundingMode.DOWN);
     }
 }
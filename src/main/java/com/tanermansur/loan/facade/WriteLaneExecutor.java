@@ -0,0 +1,143 @@
+package com.tanermansur.loan.facade;
+
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.exception.QueueFullException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CustomizableThreadCreator;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Runs the writes of a customer one at a time and in arrival order. Customers are spread over a fixed set of lanes by
+ * id, each lane being a single thread with a bounded queue, so that the writes of one customer never race each other
+ * while different lanes run in parallel. The caller waits for its write to complete, and a write that finds its lane
+ * full is refused rather than held. Writes must not be submitted from within a transaction, they run on the lane's
+ * thread in their own.
+ */
+@RequiredArgsConstructor
+@Component
+public class WriteLaneExecutor {
+    private final MeterRegistry meterRegistry;
+
+    @Value("${loan.write-lanes.enabled:true}")
+    private boolean enabled;
+
+    @Value("${loan.write-lanes.count:16}")
+    private int laneCount;
+
+    @Value("${loan.write-lanes.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${loan.write-lanes.retry-after:1s}")
+    private Duration retryAfter;
+
+    private final List<Lane> lanes = new ArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+
+        for (int i = 0; i < laneCount; i++) {
+            String lane = Integer.toString(i);
+            BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(queueCapacity);
+            CustomizableThreadCreator threadCreator = new CustomizableThreadCreator("write-lane-" + lane + "-");
+
+            Gauge.builder("loan.write-lane.queue.depth", queue, BlockingQueue::size)
+                    .description("Writes waiting for their lane")
+                    .tag("lane", lane)
+                    .register(meterRegistry);
+
+            lanes.add(new Lane(new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue, threadCreator::createThread),
+                    Timer.builder("loan.write-lane.wait")
+                            .description("Time writes spent queued for their lane")
+                            .tag("lane", lane)
+                            .register(meterRegistry),
+                    Timer.builder("loan.write-lane.execution")
+                            .description("Time writes took once their lane picked them")
+                            .tag("lane", lane)
+                            .register(meterRegistry)));
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        for (Lane lane : lanes) {
+            lane.executor().shutdown();
+        }
+    }
+
+    public <T> T execute(Customer customer, Supplier<T> write) {
+        if (!enabled) {
+            return write.get();
+        }
+
+        Lane lane = lanes.get(Math.floorMod(Long.hashCode(customer.getId()), lanes.size()));
+
+        // Amounts in responses are formatted in the locale of the request, wherever they are built
+        LocaleContext localeContext = LocaleContextHolder.getLocaleContext();
+        long queuedAt = System.nanoTime();
+
+        Future<T> result;
+        try {
+            result = lane.executor().submit(() -> {
+                long startedAt = System.nanoTime();
+                lane.waitTimer().record(startedAt - queuedAt, TimeUnit.NANOSECONDS);
+
+                LocaleContextHolder.setLocaleContext(localeContext);
+                try {
+                    return write.get();
+                } finally {
+                    LocaleContextHolder.resetLocaleContext();
+                    lane.executionTimer().record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw QueueFullException.withWriteLane(retryAfter);
+        }
+
+        // A queued write runs whatever happens to its caller, so an interrupted caller still waits for it. Giving up
+        // early would release its idempotency key while the write is pending, and a retry would run it a second time.
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return result.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private record Lane(ExecutorService executor, Timer waitTimer, Timer executionTimer) {
+    }
+}
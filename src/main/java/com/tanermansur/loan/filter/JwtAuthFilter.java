@@ -2,6 +2,7 @@ package com.tanermansur.loan.filter;
 
 import com.tanermansur.loan.service.CustomerService;
 import com.tanermansur.loan.service.JwtService;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -26,21 +27,24 @@ public class JwtAuthFilter extends OncePerRequestFilter {
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         // Retrieve the Authorization header
         String authHeader = request.getHeader("Authorization");
-        String token = null;
+        Claims claims = null;
         String username = null;
 
         // Check if the header starts with "Bearer "
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            token = authHeader.substring(7); // Extract token
-            username = jwtService.extractUsername(token); // Extract username from token
+            claims = jwtService.extractAllClaims(authHeader.substring(7)); // Verify token once, or reuse its cached claims
+            username = claims.getSubject(); // Extract username from claims
         }
 
         // If the token is valid and no authentication is set in the context
         if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = customerService.loadUserByUsername(username);
+            // Stateless principal tokens carry the customer id and roles, so no lookup is needed
+            UserDetails userDetails = jwtService.hasPrincipalClaims(claims)
+                    ? customerService.loadUserByClaims(username, jwtService.extractCustomerId(claims), jwtService.extractRoles(claims))
+                    : customerService.loadUserByUsername(username);
 
             // Validate token and set authentication
-            if (jwtService.validateToken(token, userDetails)) {
+            if (jwtService.validateToken(claims, userDetails)) {
                 UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                         userDetails,
                         null,
@@ -0,0 +1,30 @@
+package com.tanermansur.loan.mapper;
+
+import java.util.Set;
+
+/**
+ * The DTO fields a client asked for. Fields that are not selected are left null by the mappers and therefore omitted
+ * from the response.
+ */
+public final class FieldSelection {
+    private static final FieldSelection ALL = new FieldSelection(null);
+
+    // Null selects every field
+    private final Set<String> fields;
+
+    private FieldSelection(Set<String> fields) {
+        this.fields = fields;
+    }
+
+    public static FieldSelection all() {
+        return ALL;
+    }
+
+    public static FieldSelection of(Set<String> fields) {
+        return new FieldSelection(Set.copyOf(fields));
+    }
+
+    public boolean includes(String field) {
+        return fields == null || fields.contains(field);
+    }
+}
@@ -0,0 +1,100 @@
+package com.tanermansur.loan.mapper;
+
+import com.tanermansur.loan.dto.LoanDTO;
+import com.tanermansur.loan.dto.LoanInstallmentDTO;
+import com.tanermansur.loan.entity.Loan;
+import com.tanermansur.loan.entity.LoanInstallment;
+import com.tanermansur.loan.service.FormattingService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Maps loan entities to their DTOs. Every loan response goes through here so that amounts and dates are always
+ * formatted by the shared {@link FormattingService}. Only the selected fields are mapped, so unselected installments are
+ * never touched and need not be loaded.
+ */
+@RequiredArgsConstructor
+@Component
+public class LoanMapper {
+    public static final String INSTALLMENTS = "installments";
+    public static final Set<String> LOAN_FIELDS = Set.of("id", "numberOfInstallments", "paid", INSTALLMENTS);
+    public static final Set<String> INSTALLMENT_FIELDS = Set.of("dueDate", "amount", "paid", "paidAmount", "paymentDate");
+
+    private final FormattingService formattingService;
+
+    public LoanDTO toLoanDTO(Loan loan) {
+        return toLoanDTO(loan, FieldSelection.all());
+    }
+
+    public LoanDTO toLoanDTO(Loan loan, FieldSelection fields) {
+        LoanDTO loanDTO = new LoanDTO();
+
+        if (fields.includes("id")) {
+            loanDTO.setId(loan.getId());
+        }
+
+        if (fields.includes("numberOfInstallments")) {
+            loanDTO.setNumberOfInstallments(loan.getNumberOfInstallments());
+        }
+
+        if (fields.includes("paid")) {
+            loanDTO.setPaid(loan.isPaid());
+        }
+
+        if (fields.includes(INSTALLMENTS)) {
+            loanDTO.setInstallments(toLoanInstallmentDTOs(loan.getInstallments()));
+        }
+
+        return loanDTO;
+    }
+
+    public List<LoanInstallmentDTO> toLoanInstallmentDTOs(List<LoanInstallment> installments) {
+        return toLoanInstallmentDTOs(installments, FieldSelection.all());
+    }
+
+    public List<LoanInstallmentDTO> toLoanInstallmentDTOs(List<LoanInstallment> installments, FieldSelection fields) {
+        List<LoanInstallmentDTO> installmentDTOs = new ArrayList<>(installments.size());
+
+        for (LoanInstallment installment : installments) {
+            installmentDTOs.add(toLoanInstallmentDTO(installment, fields));
+        }
+
+        return installmentDTOs;
+    }
+
+    public LoanInstallmentDTO toLoanInstallmentDTO(LoanInstallment installment) {
+        return toLoanInstallmentDTO(installment, FieldSelection.all());
+    }
+
+    public LoanInstallmentDTO toLoanInstallmentDTO(LoanInstallment installment, FieldSelection fields) {
+        LoanInstallmentDTO installmentDTO = new LoanInstallmentDTO();
+
+        if (fields.includes("dueDate")) {
+            installmentDTO.setDueDate(formattingService.formatDate(installment.getDueDate()));
+        }
+
+        if (fields.includes("amount")) {
+            installmentDTO.setAmount(formattingService.formatAmount(installment.getAmount()));
+        }
+
+        if (fields.includes("paid")) {
+            installmentDTO.setPaid(installment.isPaid());
+        }
+
+        if (installment.isPaid()) {
+            if (fields.includes("paidAmount")) {
+                installmentDTO.setPaidAmount(formattingService.formatAmount(installment.getPaidAmount()));
+            }
+
+            if (fields.includes("paymentDate")) {
+                installmentDTO.setPaymentDate(formattingService.formatDate(installment.getPaymentDate()));
+            }
+        }
+
+        return installmentDTO;
+    }
+}
@@ -0,0 +1,97 @@
+package com.tanermansur.loan.money;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * An amount of money held as a whole number of minor currency units, e.g. cents when there are two fraction digits.
+ * Every operation that can lose precision takes an explicit {@link RoundingMode} and rounds exactly once, arithmetic
+ * overflow raises an {@link ArithmeticException}.
+ */
+public record Money(long units, int fractionDigits) implements Comparable<Money> {
+    public static Money zero(int fractionDigits) {
+        return new Money(0, fractionDigits);
+    }
+
+    // Fails with an ArithmeticException when the amount has more fraction digits than the currency
+    public static Money of(BigDecimal amount, int fractionDigits) {
+        return of(amount, fractionDigits, RoundingMode.UNNECESSARY);
+    }
+
+    public static Money of(BigDecimal amount, int fractionDigits, RoundingMode roundingMode) {
+        return new Money(amount.setScale(fractionDigits, roundingMode).unscaledValue().longValueExact(), fractionDigits);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(units, fractionDigits);
+    }
+
+    public Money plus(Money other) {
+        return new Money(Math.addExact(units, unitsOf(other)), fractionDigits);
+    }
+
+    public Money minus(Money other) {
+        return new Money(Math.subtractExact(units, unitsOf(other)), fractionDigits);
+    }
+
+    public Money times(long multiplier) {
+        return new Money(Math.multiplyExact(units, multiplier), fractionDigits);
+    }
+
+    public Money multiply(Rate rate, RoundingMode roundingMode) {
+        return multiplyAndDivide(rate, 1, roundingMode);
+    }
+
+    // Computes this * rate / divisor with a single rounding at the end
+    public Money multiplyAndDivide(Rate rate, long divisor, RoundingMode roundingMode) {
+        return new Money(divide(Math.multiplyExact(units, rate.unscaled()), Math.multiplyExact(rate.denominator(), divisor), roundingMode), fractionDigits);
+    }
+
+    public int signum() {
+        return Long.signum(units);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(units, unitsOf(other));
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+
+    private long unitsOf(Money other) {
+        if (other.fractionDigits != fractionDigits) {
+            throw new IllegalArgumentException(String.format("Cannot combine amounts with %d and %d fraction digits", fractionDigits, other.fractionDigits));
+        }
+
+        return other.units;
+    }
+
+    // Same results as BigDecimal.divide(divisor, 0, roundingMode) for values that fit in a long
+    static long divide(long dividend, long divisor, RoundingMode roundingMode) {
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+
+        if (remainder == 0) {
+            return quotient;
+        }
+
+        int sign = Long.signum(dividend) * Long.signum(divisor);
+        int half = Long.compare(Math.abs(remainder), Math.abs(divisor) - Math.abs(remainder));
+
+        boolean awayFromZero = switch (roundingMode) {
+            case UP -> true;
+            case DOWN -> false;
+            case CEILING -> sign > 0;
+            case FLOOR -> sign < 0;
+            case HALF_UP -> half >= 0;
+            case HALF_DOWN -> half > 0;
+            case HALF_EVEN -> half > 0 || half == 0 && (quotient & 1) != 0;
+            case UNNECESSARY -> throw new ArithmeticException("Rounding necessary");
+        };
+
+        return awayFromZero ? quotient + sign : quotient;
+    }
+}
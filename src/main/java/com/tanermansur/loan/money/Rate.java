@@ -0,0 +1,56 @@
+package com.tanermansur.loan.money;
+
+import java.math.BigDecimal;
+
+/**
+ * A decimal factor such as an interest rate, held as {@code unscaled / 10^scale} so that it can be applied to
+ * {@link Money} without leaving long arithmetic.
+ */
+public record Rate(long unscaled, int scale) {
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+            10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L,
+            1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+
+    public static final Rate ONE = new Rate(1, 0);
+
+    public Rate {
+        if (scale < 0 || scale >= POWERS_OF_TEN.length) {
+            throw new ArithmeticException(String.format("Rate scale %d is out of range", scale));
+        }
+    }
+
+    // Fails with an ArithmeticException when the value does not fit in a long with at most 18 fraction digits
+    public static Rate of(BigDecimal value) {
+        BigDecimal stripped = value.stripTrailingZeros();
+
+        if (stripped.scale() < 0) {
+            stripped = stripped.setScale(0);
+        }
+
+        return new Rate(stripped.unscaledValue().longValueExact(), stripped.scale());
+    }
+
+    public long denominator() {
+        return POWERS_OF_TEN[scale];
+    }
+
+    public Rate plus(Rate other) {
+        int commonScale = Math.max(scale, other.scale);
+
+        return new Rate(Math.addExact(rescale(commonScale), other.rescale(commonScale)), commonScale);
+    }
+
+    public Rate times(long multiplier) {
+        return new Rate(Math.multiplyExact(unscaled, multiplier), scale);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+    private long rescale(int newScale) {
+        return Math.multiplyExact(unscaled, POWERS_OF_TEN[newScale - scale]);
+    }
+}
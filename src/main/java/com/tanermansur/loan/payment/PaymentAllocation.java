@@ -0,0 +1,19 @@
+package com.tanermansur.loan.payment;
+
+import com.tanermansur.loan.entity.LoanInstallment;
+import com.tanermansur.loan.money.Money;
+
+import java.util.List;
+
+/**
+ * The outcome of spreading a payment over a loan's installments. Installments are referenced as they were given and
+ * are left untouched, the amount spent includes discounts and penalties while the amount covered is their face value.
+ */
+public record PaymentAllocation(List<InstallmentPayment> installmentPayments, Money totalAmountSpent, Money totalAmountCovered) {
+    public int numberOfInstallmentsPaid() {
+        return installmentPayments.size();
+    }
+
+    public record InstallmentPayment(LoanInstallment installment, Money paidAmount) {
+    }
+}
@@ -0,0 +1,68 @@
+package com.tanermansur.loan.payment;
+
+import com.tanermansur.loan.entity.LoanInstallment;
+import com.tanermansur.loan.money.Money;
+import com.tanermansur.loan.money.Rate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides which installments a payment covers and what each of them costs on the payment date. Installments are paid
+ * whole and in due date order until the next one no longer fits in what is left, each one discounted for every day it
+ * is paid early and penalized for every day it is paid late. Nothing is read or written here, so paying a loan and
+ * quoting a payment always agree.
+ */
+public final class PaymentAllocator {
+    private static final Rate DISCOUNT_OR_PENALTY_COEFFICIENT = Rate.of(new BigDecimal("0.001"));
+
+    private PaymentAllocator() {
+    }
+
+    // Installments due after the first day of the month after next cannot be paid yet
+    public static LocalDate maxDueDate(LocalDate paymentDate) {
+        return paymentDate.plusMonths(2).withDayOfMonth(1);
+    }
+
+    // Expects the unpaid installments of a loan in due date order, those not payable yet are skipped
+    public static PaymentAllocation allocate(List<LoanInstallment> unpaidInstallments, Money paymentAmount, LocalDate paymentDate) {
+        LocalDate maxDueDate = maxDueDate(paymentDate);
+
+        List<PaymentAllocation.InstallmentPayment> installmentPayments = new ArrayList<>();
+        Money amountLeft = paymentAmount;
+        Money totalAmountSpent = Money.zero(paymentAmount.fractionDigits());
+        Money totalAmountCovered = Money.zero(paymentAmount.fractionDigits());
+
+        for (LoanInstallment installment : unpaidInstallments) {
+            LocalDate dueDate = installment.getDueDate().toLocalDate();
+
+            if (amountLeft.signum() <= 0 || dueDate.isAfter(maxDueDate)) {
+                break;
+            }
+
+            Money installmentAmount = Money.of(installment.getAmount(), paymentAmount.fractionDigits());
+            long days = ChronoUnit.DAYS.between(dueDate, paymentDate);
+
+            Money paidAmount = installmentAmount.multiply(Rate.ONE.plus(DISCOUNT_OR_PENALTY_COEFFICIENT.times(days)), RoundingMode.HALF_UP);
+
+            if (paidAmount.signum() < 0) {
+                paidAmount = Money.zero(paymentAmount.fractionDigits());
+            }
+
+            if (paidAmount.compareTo(amountLeft) > 0) {
+                break;
+            }
+
+            installmentPayments.add(new PaymentAllocation.InstallmentPayment(installment, paidAmount));
+            amountLeft = amountLeft.minus(paidAmount);
+            totalAmountSpent = totalAmountSpent.plus(paidAmount);
+            totalAmountCovered = totalAmountCovered.plus(installmentAmount);
+        }
+
+        return new PaymentAllocation(installmentPayments, totalAmountSpent, totalAmountCovered);
+    }
+}
@@ -1,12 +1,25 @@
 package com.tanermansur.loan.repository;
 
 import com.tanermansur.loan.entity.Customer;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.util.Optional;
 
 @Repository
 public interface CustomerRepository extends CrudRepository<Customer, Long> {
     Optional<Customer> findCustomerByNameAndSurname(String name, String surname);
+
+    @Modifying
+    @Query("update versioned Customer c set c.usedCreditLimit = coalesce(c.usedCreditLimit, 0) + :amount " +
+            "where c.id = :customerId and c.creditLimit - coalesce(c.usedCreditLimit, 0) >= :requestedAmount")
+    int reserveCreditLimit(@Param("customerId") long customerId, @Param("requestedAmount") BigDecimal requestedAmount, @Param("amount") BigDecimal amount);
+
+    @Modifying
+    @Query("update versioned Customer c set c.usedCreditLimit = c.usedCreditLimit - :amount where c.id = :customerId")
+    int releaseCreditLimit(@Param("customerId") long customerId, @Param("amount") BigDecimal amount);
 }
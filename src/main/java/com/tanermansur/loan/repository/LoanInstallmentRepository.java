@@ -0,0 +1,27 @@
+package com.tanermansur.loan.repository;
+
+import com.tanermansur.loan.entity.LoanInstallment;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface LoanInstallmentRepository extends CrudRepository<LoanInstallment, Long> {
+    @Query("select i from LoanInstallment i where i.loan.id = :loanId and i.loan.customer.id = :customerId " +
+            "and i.paid = false and i.dueDate <= :maxDueDate order by i.dueDate")
+    List<LoanInstallment> findPayableInstallments(@Param("customerId") long customerId, @Param("loanId") long loanId, @Param("maxDueDate") Date maxDueDate);
+
+    // Payable installments of all the customer's open loans with their loans, oldest due first. Open loans are found on
+    // the customer/paid loan index and their installments on the loan/due date index.
+    @Query("select i from LoanInstallment i join fetch i.loan l where l.customer.id = :customerId and l.paid = false " +
+            "and i.paid = false and i.dueDate <= :maxDueDate order by i.dueDate, l.id, i.id")
+    List<LoanInstallment> findPayableInstallments(@Param("customerId") long customerId, @Param("maxDueDate") Date maxDueDate);
+
+    @Query("select distinct i.loan.id from LoanInstallment i where i.loan.id in :loanIds and i.paid = false")
+    List<Long> findLoanIdsWithUnpaidInstallments(@Param("loanIds") Collection<Long> loanIds);
+}
@@ -1,14 +1,56 @@
 package com.tanermansur.loan.repository;
 
 import com.tanermansur.loan.entity.Loan;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface LoanRepository extends CrudRepository<Loan, Long>, PagingAndSortingRepository<Loan, Long> {
-    Page<Loan> findAllByCustomerId(long customerId, Pageable pageable);
-    Optional<Loan> findByCustomerIdAndId(long customerId, long id);
+public interface LoanRepository extends CrudRepository<Loan, Long>, PagingAndSortingRepository<Loan, Long>, JpaSpecificationExecutor<Loan> {
+    boolean existsByCustomerIdAndId(long customerId, long id);
+    boolean existsByIdAndPaidTrue(long id);
+
+    @Query("select l.version from Loan l where l.customer.id = :customerId and l.id = :id")
+    Optional<Long> findVersionByCustomerIdAndId(@Param("customerId") long customerId, @Param("id") long id);
+
+    // The version is checked again on commit, and the commit fails if another transaction incremented it first
+    @Lock(LockModeType.OPTIMISTIC)
+    Optional<Loan> findWithVersionCheckById(long id);
+
+    // Initializes the installments of the given loans in one query, loans already in the persistence context are reused
+    @Query("select distinct l from Loan l left join fetch l.installments where l.id in :ids")
+    List<Loan> fetchInstallments(@Param("ids") Collection<Long> ids);
+
+    // Forward-only reads for exports, rows are fetched from the driver in batches and never put in the second-level cache
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    @Query("select l from Loan l where l.customer.id = :customerId order by l.id")
+    Stream<Loan> streamByCustomerId(@Param("customerId") long customerId);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    @Query("select l from Loan l order by l.id")
+    Stream<Loan> streamAll();
+
+    @Modifying
+    @Query("update Loan l set l.paid = true where l.id in :loanIds")
+    int markAllPaid(@Param("loanIds") Collection<Long> loanIds);
 }
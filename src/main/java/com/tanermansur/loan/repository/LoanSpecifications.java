@@ -0,0 +1,37 @@
+package com.tanermansur.loan.repository;
+
+import com.tanermansur.loan.dto.GetLoansRequestDTO;
+import com.tanermansur.loan.entity.Loan;
+import org.springframework.data.jpa.domain.Specification;
+
+public final class LoanSpecifications {
+    private LoanSpecifications() {
+    }
+
+    // Only the filters present in the request become predicates, so the query stays on the customer/paid/installments index
+    public static Specification<Loan> matching(long customerId, GetLoansRequestDTO request) {
+        Specification<Loan> specification = hasCustomerId(customerId);
+
+        if (request.getIsPaid() != null) {
+            specification = specification.and(hasPaid(request.getIsPaid()));
+        }
+
+        if (request.getNumberOfInstallments() != null) {
+            specification = specification.and(hasNumberOfInstallments(request.getNumberOfInstallments()));
+        }
+
+        return specification;
+    }
+
+    public static Specification<Loan> hasCustomerId(long customerId) {
+        return (root, query, criteriaBuilder) -> criteriaBuilder.equal(root.get("customer").get("id"), customerId);
+    }
+
+    public static Specification<Loan> hasPaid(boolean paid) {
+        return (root, query, criteriaBuilder) -> criteriaBuilder.equal(root.get("paid"), paid);
+    }
+
+    public static Specification<Loan> hasNumberOfInstallments(int numberOfInstallments) {
+        return (root, query, criteriaBuilder) -> criteriaBuilder.equal(root.get("numberOfInstallments"), numberOfInstallments);
+    }
+}
@@ -1,37 +1,87 @@
 package com.tanermansur.loan.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.tanermansur.loan.entity.Customer;
 import com.tanermansur.loan.exception.CustomerNotFoundException;
 import com.tanermansur.loan.exception.InsufficientCustomerLimitException;
+import com.tanermansur.loan.money.Money;
 import com.tanermansur.loan.repository.CustomerRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.math.BigDecimal;
-import java.util.Optional;
+import java.time.Duration;
+import java.util.Collection;
 
 @RequiredArgsConstructor
 @Service
 public class CustomerService implements UserDetailsService {
+    private static final String ADMIN_USERNAME = "admin";
+    private static final String ADMIN_ROLE = "ROLE_ADMIN";
+
     private final CustomerRepository customerRepository;
+    private final MeterRegistry meterRegistry;
+    private final FormattingService formattingService;
+
+    @Value("${customer.principal-cache.maximum-size:10000}")
+    private long principalCacheMaximumSize;
+
+    @Value("${customer.principal-cache.time-to-live:5m}")
+    private Duration principalCacheTimeToLive;
+
+    private Cache<String, Customer> principals;
+
+    @PostConstruct
+    public void init() {
+        principals = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(principalCacheMaximumSize)
+                .expireAfterWrite(principalCacheTimeToLive)
+                .recordStats()
+                .<String, Customer>build(), "customer.principals");
+    }
 
-    public void checkInsufficientCustomerLimit(Customer customer, BigDecimal loanAmount) {
-        if (customer.getCreditLimit()
-                .subtract(Optional.ofNullable(customer.getUsedCreditLimit()).orElse(BigDecimal.ZERO))
-                .compareTo(loanAmount) < 0) {
-            throw new InsufficientCustomerLimitException(customer, loanAmount);
+    // Checks the limit against the requested amount and charges the given amount in a single conditional update
+    @Transactional
+    public void reserveCreditLimit(Customer customer, Money requestedAmount, Money amount) {
+        if (!tryReserveCreditLimit(customer, requestedAmount, amount)) {
+            throw new InsufficientCustomerLimitException(customer, requestedAmount.toBigDecimal(), formattingService::formatAmount);
         }
     }
 
+    // Same as reserveCreditLimit, but reports an insufficient limit without marking a surrounding transaction rollback-only
+    @Transactional
+    public boolean tryReserveCreditLimit(Customer customer, Money requestedAmount, Money amount) {
+        if (customerRepository.reserveCreditLimit(customer.getId(), requestedAmount.toBigDecimal(), amount.toBigDecimal()) == 0) {
+            return false;
+        }
+
+        evictPrincipal(customer);
+
+        return true;
+    }
+
+    @Transactional
+    public void releaseCreditLimit(Customer customer, Money amount) {
+        customerRepository.releaseCreditLimit(customer.getId(), amount.toBigDecimal());
+
+        evictPrincipal(customer);
+    }
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        if (username.equals("admin")) {
-            return User.withUsername("admin").roles("ADMIN").password("").build();
+        if (username.equals(ADMIN_USERNAME)) {
+            return newAdmin();
         }
 
         String[] nameAndSurname = username.split("\\.");
@@ -39,12 +89,76 @@ public class CustomerService implements UserDetailsService {
             throw CustomerNotFoundException.withUsername(username);
         }
 
-        return customerRepository.findCustomerByNameAndSurname(nameAndSurname[0], nameAndSurname[1])
-                .orElseThrow(() -> CustomerNotFoundException.withNameAndSurname(nameAndSurname[0], nameAndSurname[1]));
+        // Callers get their own copy so that changes on it never leak into the cached principal
+        return copyOf(principals.get(username, key -> customerRepository.findCustomerByNameAndSurname(nameAndSurname[0], nameAndSurname[1])
+                .orElseThrow(() -> CustomerNotFoundException.withNameAndSurname(nameAndSurname[0], nameAndSurname[1]))));
+    }
+
+    public UserDetails loadUserByClaims(String username, Long customerId, Collection<String> roles) {
+        if (roles.contains(ADMIN_ROLE)) {
+            return newAdmin();
+        }
+
+        String[] nameAndSurname = username.split("\\.");
+        if (nameAndSurname.length != 2 || customerId == null) {
+            throw CustomerNotFoundException.withUsername(username);
+        }
+
+        // Only identity is known here, limits are loaded on demand through loadCustomer
+        Customer customer = new Customer();
+
+        customer.setId(customerId);
+        customer.setName(nameAndSurname[0]);
+        customer.setSurname(nameAndSurname[1]);
+
+        return customer;
+    }
+
+    public Customer loadCustomer(Customer customer) {
+        if (customer.getCreditLimit() != null) {
+            return customer;
+        }
+
+        return customerRepository.findById(customer.getId())
+                .orElseThrow(() -> CustomerNotFoundException.withCustomerId(customer.getId()));
     }
 
     @Transactional
     public void updateCustomer(Customer customer) {
         customerRepository.save(customer);
+
+        evictPrincipal(customer);
+    }
+
+    private void evictPrincipal(Customer customer) {
+        String username = customer.getUsername();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    principals.invalidate(username);
+                }
+            });
+        } else {
+            principals.invalidate(username);
+        }
+    }
+
+    private static UserDetails newAdmin() {
+        return User.withUsername(ADMIN_USERNAME).roles("ADMIN").password("").build();
+    }
+
+    private static Customer copyOf(Customer customer) {
+        Customer copy = new Customer();
+
+        copy.setId(customer.getId());
+        copy.setName(customer.getName());
+        copy.setSurname(customer.getSurname());
+        copy.setCreditLimit(customer.getCreditLimit());
+        copy.setUsedCreditLimit(customer.getUsedCreditLimit());
+        copy.setVersion(customer.getVersion());
+
+        return copy;
     }
 }
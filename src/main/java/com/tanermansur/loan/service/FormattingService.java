@@ -0,0 +1,121 @@
+package com.tanermansur.loan.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.text.NumberFormat;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Formats amounts and dates for every response. Amounts are always in the service currency, only their layout follows
+ * the locale of the current request, which Spring resolves from the Accept-Language header. Dates are ISO local dates
+ * regardless of the locale.
+ */
+@RequiredArgsConstructor
+@Service
+public class FormattingService {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    // Bounds the per-locale state to the locales the JDK can actually format, whatever the clients send
+    private static final Set<Locale> AVAILABLE_LOCALES = Set.of(NumberFormat.getAvailableLocales());
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${loan.currency:}")
+    private String currencyCode;
+
+    @Value("${loan.formatting.amount-cache.maximum-size:0}")
+    private long amountCacheMaximumSize;
+
+    private Currency currency;
+
+    // Building a currency format is costly, it is done once per locale and then cloned for each thread
+    private final Map<Locale, NumberFormat> prototypes = new ConcurrentHashMap<>();
+
+    // NumberFormat is not thread-safe, each thread keeps its own instance per locale
+    private final ThreadLocal<Map<Locale, NumberFormat>> currencyFormats = ThreadLocal.withInitial(HashMap::new);
+
+    private Cache<AmountKey, String> amounts;
+
+    @PostConstruct
+    public void init() {
+        currency = StringUtils.hasText(currencyCode) ? Currency.getInstance(currencyCode) : NumberFormat.getCurrencyInstance().getCurrency();
+
+        if (amountCacheMaximumSize > 0) {
+            amounts = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                    .maximumSize(amountCacheMaximumSize)
+                    .recordStats()
+                    .<AmountKey, String>build(), "loan.formatting.amounts");
+        }
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public int getCurrencyFractionDigits() {
+        return currency.getDefaultFractionDigits();
+    }
+
+    // The locale amounts of the current request are formatted in
+    public Locale getLocale() {
+        return resolveLocale(LocaleContextHolder.getLocale());
+    }
+
+    public String formatAmount(BigDecimal amount) {
+        return formatAmount(amount, LocaleContextHolder.getLocale());
+    }
+
+    public String formatAmount(BigDecimal amount, Locale locale) {
+        Locale formatLocale = resolveLocale(locale);
+
+        if (amounts == null) {
+            return currencyFormat(formatLocale).format(amount);
+        }
+
+        // Amounts differing only in trailing zeros format the same, so they share an entry
+        return amounts.get(new AmountKey(formatLocale, amount.stripTrailingZeros()), key -> currencyFormat(key.locale()).format(key.amount()));
+    }
+
+    public String formatDate(Date date) {
+        return DATE_FORMATTER.format(date.toLocalDate());
+    }
+
+    private NumberFormat currencyFormat(Locale locale) {
+        return currencyFormats.get().computeIfAbsent(locale, key -> (NumberFormat) prototypes.computeIfAbsent(key, this::newCurrencyFormat).clone());
+    }
+
+    private NumberFormat newCurrencyFormat(Locale locale) {
+        NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(locale);
+
+        currencyFormat.setCurrency(currency);
+
+        return currencyFormat;
+    }
+
+    private static Locale resolveLocale(Locale locale) {
+        if (locale == null) {
+            return Locale.getDefault();
+        }
+
+        // Variants and extensions never change how an amount is laid out
+        Locale languageAndCountry = new Locale(locale.getLanguage(), locale.getCountry());
+
+        return AVAILABLE_LOCALES.contains(languageAndCountry) ? languageAndCountry : Locale.getDefault();
+    }
+
+    private record AmountKey(Locale locale, BigDecimal amount) {
+    }
+}
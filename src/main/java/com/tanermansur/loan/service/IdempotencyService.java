@@ -0,0 +1,117 @@
+package com.tanermansur.loan.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.exception.IdempotentRequestInProgressException;
+import com.tanermansur.loan.exception.InvalidIdempotencyKeyException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs a request at most once per idempotency key. The response of the first request with a key is kept for a while and
+ * returned to every retry of it without running it again, and retries arriving while it is still running wait for its
+ * response instead of running alongside it. Keys are scoped to the customer and the operation. A request that fails is
+ * forgotten, so that it can be retried.
+ */
+@RequiredArgsConstructor
+@Service
+public class IdempotencyService {
+    private static final int MAXIMUM_KEY_LENGTH = 255;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${loan.idempotency.maximum-size:100000}")
+    private long maximumSize;
+
+    @Value("${loan.idempotency.time-to-live:24h}")
+    private Duration timeToLive;
+
+    @Value("${loan.idempotency.wait-timeout:30s}")
+    private Duration waitTimeout;
+
+    private Cache<IdempotencyKey, Execution> executions;
+
+    @PostConstruct
+    public void init() {
+        executions = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .<IdempotencyKey, Execution>build(), "loan.idempotency");
+    }
+
+    // Without a key the request is simply run
+    public <T> T execute(Customer customer, String key, String operation, Object request, Supplier<T> response) {
+        if (!StringUtils.hasText(key)) {
+            return response.get();
+        }
+
+        if (key.length() > MAXIMUM_KEY_LENGTH) {
+            throw InvalidIdempotencyKeyException.withTooLongKey(MAXIMUM_KEY_LENGTH);
+        }
+
+        IdempotencyKey idempotencyKey = new IdempotencyKey(customer.getId(), operation, key);
+        Execution execution = new Execution(request, new CompletableFuture<>());
+        Execution firstExecution = executions.get(idempotencyKey, k -> execution);
+
+        if (firstExecution != execution) {
+            if (!firstExecution.request().equals(request)) {
+                throw InvalidIdempotencyKeyException.withDifferentRequest(key);
+            }
+
+            return await(firstExecution, key);
+        }
+
+        try {
+            T result = response.get();
+
+            execution.response().complete(result);
+
+            return result;
+        } catch (RuntimeException | Error e) {
+            executions.asMap().remove(idempotencyKey, execution);
+            execution.response().completeExceptionally(e);
+
+            throw e;
+        }
+    }
+
+    // Waiting retries get the response, or the failure, of the first request
+    @SuppressWarnings("unchecked")
+    private <T> T await(Execution execution, String key) {
+        try {
+            return (T) execution.response().get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IdempotentRequestInProgressException(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IdempotentRequestInProgressException(key);
+        }
+    }
+
+    private record IdempotencyKey(Long customerId, String operation, String key) {
+    }
+
+    private record Execution(Object request, CompletableFuture<Object> response) {
+    }
+}
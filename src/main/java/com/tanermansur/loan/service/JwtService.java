@@ -1,24 +1,52 @@
 package com.tanermansur.loan.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.tanermansur.loan.entity.Customer;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.*;
 import java.util.function.Function;
 
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class JwtService {
+    private static final long DEFAULT_VERIFIED_TOKEN_TTL_NANOS = Duration.ofMinutes(30).toNanos();
+    private static final String CUSTOMER_ID_CLAIM = "cid";
+    private static final String ROLES_CLAIM = "roles";
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${jwt.verified-token-cache.maximum-size:10000}")
+    private long verifiedTokenCacheMaximumSize;
+
+    @Value("${jwt.stateless-principal:false}")
+    private boolean statelessPrincipal;
+
     private Key signKey;
+    private JwtParser jwtParser;
+    private Cache<String, Claims> verifiedTokens;
 
     @PostConstruct
     public void init() {
@@ -34,6 +62,17 @@ public class JwtService {
         } else {
             signKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret));
         }
+
+        jwtParser = Jwts.parserBuilder()
+                .setSigningKey(getSignKey())
+                .build();
+
+        // Verified claims are kept until the token itself expires, keyed by a digest so raw tokens are not retained
+        verifiedTokens = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(verifiedTokenCacheMaximumSize)
+                .expireAfter(new VerifiedTokenExpiry())
+                .recordStats()
+                .<String, Claims>build(), "jwt.verified-tokens");
     }
 
     // Generate token with given user name
@@ -42,6 +81,21 @@ public class JwtService {
         return createToken(claims, userName);
     }
 
+    // Generate token with given user name, carrying the principal's customer id and roles in stateless principal mode
+    public String generateToken(String userName, UserDetails userDetails) {
+        if (!statelessPrincipal) {
+            return generateToken(userName);
+        }
+
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(ROLES_CLAIM, userDetails.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+        if (userDetails instanceof Customer customer) {
+            claims.put(CUSTOMER_ID_CLAIM, customer.getId());
+        }
+
+        return createToken(claims, userName);
+    }
+
     // Create a JWT token with specified claims and subject (user name)
     private String createToken(Map<String, Object> claims, String userName) {
         return Jwts.builder()
@@ -74,28 +128,82 @@ public class JwtService {
         return claimsResolver.apply(claims);
     }
 
-    // Extract all claims from the token
-    private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSignKey())
-                .build()
+    // Extract the customer id from stateless principal claims
+    public Long extractCustomerId(Claims claims) {
+        return claims.get(CUSTOMER_ID_CLAIM, Long.class);
+    }
+
+    // Extract the roles from stateless principal claims
+    @SuppressWarnings("unchecked")
+    public List<String> extractRoles(Claims claims) {
+        return claims.get(ROLES_CLAIM, List.class);
+    }
+
+    // Check if the claims carry everything needed to build the principal without a lookup
+    public boolean hasPrincipalClaims(Claims claims) {
+        return claims.containsKey(ROLES_CLAIM);
+    }
+
+    // Extract all claims from the token, verifying its signature only when it is not cached yet
+    public Claims extractAllClaims(String token) {
+        return verifiedTokens.get(digest(token), key -> parseClaims(token));
+    }
+
+    // Parse and verify the token
+    private Claims parseClaims(String token) {
+        return jwtParser
                 .parseClaimsJws(token)
                 .getBody();
     }
 
+    // Digest the token to use it as a cache key
+    private static String digest(String token) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+
+            return Base64.getEncoder().encodeToString(messageDigest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     // Check if the token is expired
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    private Boolean isTokenExpired(Claims claims) {
+        return claims.getExpiration().before(new Date());
     }
 
     // Validate the token against user details and expiration
     public Boolean validateToken(String token, UserDetails userDetails) {
-        if (isTokenExpired(token)) {
+        return validateToken(extractAllClaims(token), userDetails);
+    }
+
+    // Validate already verified claims against user details and expiration
+    public Boolean validateToken(Claims claims, UserDetails userDetails) {
+        if (isTokenExpired(claims)) {
             return Boolean.FALSE;
         }
 
-        String username = extractUsername(token);
+        return claims.getSubject().equals(userDetails.getUsername());
+    }
 
-        return username.equals(userDetails.getUsername());
+    private static class VerifiedTokenExpiry implements Expiry<String, Claims> {
+        @Override
+        public long expireAfterCreate(String key, Claims claims, long currentTime) {
+            if (claims.getExpiration() == null) {
+                return DEFAULT_VERIFIED_TOKEN_TTL_NANOS;
+            }
+
+            return Math.max(0, Duration.ofMillis(claims.getExpiration().getTime() - System.currentTimeMillis()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, claims, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
-}
\ No newline at end of file
+}
@@ -6,24 +6,49 @@ import com.tanermansur.loan.entity.Customer;
 import com.tanermansur.loan.entity.Loan;
 import com.tanermansur.loan.entity.LoanInstallment;
 import com.tanermansur.loan.exception.LoanNotFoundException;
+import com.tanermansur.loan.repository.LoanInstallmentRepository;
 import com.tanermansur.loan.repository.LoanRepository;
+import com.tanermansur.loan.repository.LoanSpecifications;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.LockModeType;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.sql.Date;
 import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @RequiredArgsConstructor
 @Service
 public class LoanService {
     private final LoanRepository loanRepository;
+    private final LoanInstallmentRepository loanInstallmentRepository;
+    private final EntityManagerFactory entityManagerFactory;
+    private final EntityManager entityManager;
+
+    @Value("${loan.export.chunk-size:500}")
+    private int exportChunkSize;
 
     @Transactional
     public void createLoan(CreateLoanContext context) {
@@ -31,12 +56,12 @@ public class LoanService {
 
         loan.setCreateDate(Timestamp.from(context.getNow()));
         loan.setCustomer(context.getCustomer());
-        loan.setLoanAmount(context.getLoanAmount());
+        loan.setLoanAmount(context.getLoanAmount().toBigDecimal());
         loan.setNumberOfInstallments(context.getNumberOfInstallments());
 
-        context.setAmountToBePaidBack(context.getLoanAmount().add(context.getLoanAmount().multiply(context.getInterestRate())));
-        context.setSingleInstallmentAmount(context.getAmountToBePaidBack().divide(BigDecimal.valueOf(context.getNumberOfInstallments()), context.getCurrencyFractionDigits(), RoundingMode.HALF_UP));
-        context.setResidueLoanAmount(context.getAmountToBePaidBack().subtract(context.getSingleInstallmentAmount().multiply(BigDecimal.valueOf(context.getNumberOfInstallments()))));
+        if (context.getAmountToBePaidBack() == null) {
+            context.calculateInstallmentAmounts();
+        }
 
         createLoanInstallments(loan, context);
 
@@ -49,9 +74,9 @@ public class LoanService {
             LoanInstallment loanInstallment = new LoanInstallment();
 
             if (i + 1 == context.getNumberOfInstallments()) {
-                loanInstallment.setAmount(context.getSingleInstallmentAmount().add(context.getResidueLoanAmount()));
+                loanInstallment.setAmount(context.getSingleInstallmentAmount().plus(context.getResidueLoanAmount()).toBigDecimal());
             } else {
-                loanInstallment.setAmount(context.getSingleInstallmentAmount());
+                loanInstallment.setAmount(context.getSingleInstallmentAmount().toBigDecimal());
             }
 
             loanInstallment.setDueDate(Date.valueOf(loan.getCreateDate().toLocalDateTime().toLocalDate()
@@ -66,19 +91,173 @@ public class LoanService {
         loan.setInstallments(loanInstallments);
     }
 
-    public Page<Loan> getLoans(Customer customer, GetLoansRequestDTO request, int pageSize, int page) {
-        return loanRepository.findAllByCustomerId(customer.getId(), Pageable.ofSize(pageSize).withPage(page));
+    // Installments are left unloaded unless asked for, they must not be accessed after the transaction otherwise
+    @Transactional
+    public Page<Loan> getLoans(Customer customer, GetLoansRequestDTO request, int pageSize, int page, boolean withInstallments) {
+        Page<Loan> loans = loanRepository.findAll(LoanSpecifications.matching(customer.getId(), request), Pageable.ofSize(pageSize).withPage(page));
+
+        if (withInstallments) {
+            fetchInstallments(loans.getContent());
+        }
+
+        return loans;
+    }
+
+    // Keyset scrolling in id order, the window is read with one extra row to detect the next one and without a count query
+    @Transactional
+    public Window<Loan> getLoans(Customer customer, GetLoansRequestDTO request, int pageSize, KeysetScrollPosition position, boolean withInstallments) {
+        Window<Loan> loans = loanRepository.findBy(LoanSpecifications.matching(customer.getId(), request),
+                query -> query.sortBy(Sort.by("id")).limit(pageSize).scroll(position));
+
+        if (withInstallments) {
+            fetchInstallments(loans.getContent());
+        }
+
+        return loans;
+    }
+
+    // One installment query per page instead of one per loan, whatever the page size
+    private void fetchInstallments(List<Loan> loans) {
+        if (!loans.isEmpty()) {
+            loanRepository.fetchInstallments(loans.stream().map(Loan::getId).toList());
+        }
+    }
+
+    // Hands the loans of the customer, or of every customer when customerId is null, to the consumer in id order and in
+    // chunks. The persistence context is cleared after each chunk, so memory stays flat whatever the size of the loan book.
+    @Transactional
+    public void exportLoans(Long customerId, boolean withInstallments, Consumer<List<Loan>> chunkConsumer) {
+        try (Stream<Loan> loans = customerId == null ? loanRepository.streamAll() : loanRepository.streamByCustomerId(customerId)) {
+            List<Loan> chunk = new ArrayList<>(exportChunkSize);
+
+            for (Iterator<Loan> iterator = loans.iterator(); iterator.hasNext(); ) {
+                chunk.add(iterator.next());
+
+                if (chunk.size() == exportChunkSize) {
+                    exportChunk(chunk, withInstallments, chunkConsumer);
+                }
+            }
+
+            if (!chunk.isEmpty()) {
+                exportChunk(chunk, withInstallments, chunkConsumer);
+            }
+        }
     }
 
+    private void exportChunk(List<Loan> chunk, boolean withInstallments, Consumer<List<Loan>> chunkConsumer) {
+        if (withInstallments) {
+            fetchInstallments(chunk);
+        }
+
+        chunkConsumer.accept(chunk);
+
+        chunk.clear();
+        entityManager.clear();
+    }
+
+    @Transactional
     public List<LoanInstallment> getInstallments(Customer customer, long loanId) {
-        return loanRepository.findByCustomerIdAndId(customer.getId(), loanId)
-                .map(Loan::getInstallments)
-                .orElseThrow(() -> new LoanNotFoundException(loanId));
+        return getLoan(customer, loanId).getInstallments();
     }
 
+    // Loaded by id and through its associations so that a repeated read is served from the second-level cache
+    @Transactional
     public Loan getLoan(Customer customer, long loanId) {
-        return loanRepository.findByCustomerIdAndId(customer.getId(), loanId)
+        Loan loan = loanRepository.findById(loanId)
+                .filter(candidate -> candidate.getCustomer().getId() == customer.getId())
                 .orElseThrow(() -> new LoanNotFoundException(loanId));
+
+        Hibernate.initialize(loan.getInstallments());
+
+        return loan;
+    }
+
+    public long getLoanVersion(Customer customer, long loanId) {
+        return loanRepository.findVersionByCustomerIdAndId(customer.getId(), loanId)
+                .orElseThrow(() -> new LoanNotFoundException(loanId));
+    }
+
+    // Reports a loan that is not the customer's without failing a surrounding transaction
+    public boolean isCustomerLoan(Customer customer, long loanId) {
+        return loanRepository.existsByCustomerIdAndId(customer.getId(), loanId);
+    }
+
+    // Takes the version of the customer's loan before its installments are read for a payment. A payment of the same
+    // loan committing in between then fails this transaction's version check, rather than both paying an installment.
+    // The version is only incremented by payInstallments, so a payment that pays nothing leaves the loan as it was.
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void lockLoan(Customer customer, long loanId) {
+        loanRepository.findWithVersionCheckById(loanId)
+                .filter(loan -> loan.getCustomer().getId() == customer.getId())
+                .orElseThrow(() -> new LoanNotFoundException(loanId));
+    }
+
+    // Unpaid installments of the customer's loan due on or before maxDueDate, in due date order
+    public List<LoanInstallment> getPayableInstallments(Customer customer, long loanId, LocalDate maxDueDate) {
+        List<LoanInstallment> installments = loanInstallmentRepository.findPayableInstallments(customer.getId(), loanId, Date.valueOf(maxDueDate));
+
+        // Nothing payable may also mean the loan is not the customer's, only then is ownership checked separately
+        if (installments.isEmpty() && !loanRepository.existsByCustomerIdAndId(customer.getId(), loanId)) {
+            throw new LoanNotFoundException(loanId);
+        }
+
+        return installments;
+    }
+
+    // Unpaid installments of all the customer's open loans due on or before maxDueDate, oldest due first, with their loans
+    public List<LoanInstallment> getPayableInstallments(Customer customer, LocalDate maxDueDate) {
+        return loanInstallmentRepository.findPayableInstallments(customer.getId(), Date.valueOf(maxDueDate));
+    }
+
+    // Writes payments made on installments of several loans, which must have been loaded and paid in the current
+    // transaction, and returns the ids of the loans paid completely afterwards
+    @Transactional
+    public Set<Long> payInstallments(Collection<LoanInstallment> paidInstallments) {
+        Map<Long, Loan> loans = new LinkedHashMap<>();
+        for (LoanInstallment installment : paidInstallments) {
+            loans.putIfAbsent(installment.getLoan().getId(), installment.getLoan());
+        }
+
+        // Same guard as a single loan payment, the loans are already loaded so only their versions are written on commit
+        for (Loan loan : loans.values()) {
+            entityManager.lock(loan, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+            evictLoan(loan.getId());
+        }
+
+        // The query flushes the dirty installments as one batch of updates first
+        Set<Long> paidLoanIds = new HashSet<>(loans.keySet());
+        loanInstallmentRepository.findLoanIdsWithUnpaidInstallments(loans.keySet()).forEach(paidLoanIds::remove);
+
+        if (!paidLoanIds.isEmpty()) {
+            loanRepository.markAllPaid(paidLoanIds);
+        }
+
+        return paidLoanIds;
+    }
+
+    // Same for the installments of one loan, locked with lockLoan earlier in the transaction, and returns whether the
+    // loan is paid completely afterwards
+    @Transactional
+    public boolean payInstallments(long loanId, List<LoanInstallment> paidInstallments) {
+        return payInstallments((Collection<LoanInstallment>) paidInstallments).contains(loanId);
+    }
+
+    // The forced version increment bypasses the second-level cache, so the cached loan is dropped once it commits
+    private void evictLoan(long loanId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    entityManagerFactory.getCache().evict(Loan.class, loanId);
+                }
+            });
+        } else {
+            entityManagerFactory.getCache().evict(Loan.class, loanId);
+        }
+    }
+
+    public boolean isLoanPaid(long loanId) {
+        return loanRepository.existsByIdAndPaidTrue(loanId);
     }
 
     @Transactional
@@ -0,0 +1,78 @@
+package com.tanermansur.loan.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Runs a unit of work again when it loses an optimistic locking race, waiting a random time below an exponentially
+ * growing bound between attempts so that the racing requests spread out rather than collide again. Conflicts and
+ * retries are counted per operation: conflicts that keep outnumbering retries mean requests are giving up and the
+ * contended loan or customer needs another strategy.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class RetryService {
+    private final MeterRegistry meterRegistry;
+
+    @Value("${loan.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${loan.retry.initial-backoff:10ms}")
+    private Duration initialBackoff;
+
+    @Value("${loan.retry.max-backoff:100ms}")
+    private Duration maxBackoff;
+
+    // The unit of work must start and commit its own transaction, a surrounding one could not be retried
+    public <T> T retryOnConflict(String operation, Supplier<T> unitOfWork) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return unitOfWork.get();
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return unitOfWork.get();
+            } catch (OptimisticLockingFailureException e) {
+                counter("loan.optimistic-lock.conflicts", operation).increment();
+
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+
+                counter("loan.optimistic-lock.retries", operation).increment();
+                log.debug("{} conflicted on attempt {}, retrying", operation, attempt);
+
+                backOff(attempt);
+            }
+        }
+    }
+
+    private void backOff(int attempt) {
+        long boundMillis = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempt - 1, 20));
+
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(boundMillis + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("Interrupted while waiting to retry", e);
+        }
+    }
+
+    private Counter counter(String name, String operation) {
+        return Counter.builder(name)
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,102 @@
+package com.tanermansur.loan.benchmark;
+
+import com.tanermansur.loan.dto.LoanDTO;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.entity.Loan;
+import com.tanermansur.loan.entity.LoanInstallment;
+import com.tanermansur.loan.mapper.LoanMapper;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.tanermansur.loan.fixture.FormattingFixture.getFormattingServiceFixture;
+
+/**
+ * Compares mapping a loan with its installments through the reflective ModelMapper the listing used to rely on against
+ * the explicit LoanMapper, with and without the cache of formatted amounts. The GC profiler reports the allocation rate
+ * next to the throughput.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * "-Dexec.args=-cp %classpath com.tanermansur.loan.benchmark.LoanMapperBenchmark"}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoanMapperBenchmark {
+    @Param({"6", "24"})
+    private int numberOfInstallments;
+
+    private final ModelMapper modelMapper = new ModelMapper();
+    private final LoanMapper loanMapper = new LoanMapper(getFormattingServiceFixture());
+    private final LoanMapper cachingLoanMapper = new LoanMapper(getFormattingServiceFixture("", 10_000));
+
+    private Loan loan;
+
+    @Setup
+    public void setUp() {
+        loan = new Loan();
+
+        loan.setId(1L);
+        loan.setCustomer(new Customer());
+        loan.setLoanAmount(new BigDecimal("1000.00"));
+        loan.setNumberOfInstallments(numberOfInstallments);
+        loan.setCreateDate(Timestamp.from(Instant.parse("2025-02-03T00:00:00.000Z")));
+
+        List<LoanInstallment> installments = new ArrayList<>();
+        for (int i = 0; i < numberOfInstallments; i++) {
+            LoanInstallment installment = new LoanInstallment();
+
+            installment.setId(i + 1);
+            installment.setLoan(loan);
+            installment.setAmount(new BigDecimal("41.67"));
+            installment.setDueDate(Date.valueOf(LocalDate.parse("2025-03-01").plusMonths(i)));
+
+            // Half of the schedule is paid so that both branches of the mapping are measured
+            if (i < numberOfInstallments / 2) {
+                installment.setPaid(true);
+                installment.setPaidAmount(new BigDecimal("41.25"));
+                installment.setPaymentDate(Date.valueOf("2025-02-03"));
+            }
+
+            installments.add(installment);
+        }
+        loan.setInstallments(installments);
+    }
+
+    @Benchmark
+    public LoanDTO modelMapper() {
+        return modelMapper.map(loan, LoanDTO.class);
+    }
+
+    @Benchmark
+    public LoanDTO loanMapper() {
+        return loanMapper.toLoanDTO(loan);
+    }
+
+    @Benchmark
+    public LoanDTO cachingLoanMapper() {
+        return cachingLoanMapper.toLoanDTO(loan);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LoanMapperBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
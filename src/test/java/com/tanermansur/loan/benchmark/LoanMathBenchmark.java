@@ -0,0 +1,113 @@
+package com.tanermansur.loan.benchmark;
+
+import com.tanermansur.loan.money.Money;
+import com.tanermansur.loan.money.Rate;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.NumberFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the installment schedule and discount/penalty arithmetic of createLoan and payLoan done with BigDecimal,
+ * as it used to be, against the same arithmetic on minor units.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * "-Dexec.args=-cp %classpath com.tanermansur.loan.benchmark.LoanMathBenchmark"}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoanMathBenchmark {
+    private static final BigDecimal DISCOUNT_OR_PENALTY_COEFFICIENT = new BigDecimal("0.001");
+    private static final Rate DISCOUNT_OR_PENALTY_COEFFICIENT_RATE = Rate.of(DISCOUNT_OR_PENALTY_COEFFICIENT);
+
+    @Param({"6", "24"})
+    private int numberOfInstallments;
+
+    private final BigDecimal loanAmount = new BigDecimal("12345.67");
+    private final BigDecimal interestRate = new BigDecimal("0.35");
+    private final Money loanAmountMoney = Money.of(loanAmount, 2);
+    private final Rate interestRateRate = Rate.of(interestRate);
+
+    private BigDecimal[] installmentAmounts;
+    private long[] days;
+
+    @Setup
+    public void setUp() {
+        installmentAmounts = new BigDecimal[numberOfInstallments];
+        days = new long[numberOfInstallments];
+
+        for (int i = 0; i < numberOfInstallments; i++) {
+            installmentAmounts[i] = new BigDecimal("2057.61");
+            days[i] = 17 - 30L * i;
+        }
+    }
+
+    @Benchmark
+    public void createLoanBigDecimal(Blackhole blackhole) {
+        BigDecimal amountToBePaidBack = loanAmount.add(loanAmount.multiply(interestRate));
+        BigDecimal single = amountToBePaidBack.divide(BigDecimal.valueOf(numberOfInstallments), 2, RoundingMode.HALF_UP);
+        BigDecimal residue = amountToBePaidBack.subtract(single.multiply(BigDecimal.valueOf(numberOfInstallments)));
+
+        for (int i = 0; i < numberOfInstallments; i++) {
+            blackhole.consume(i + 1 == numberOfInstallments ? single.add(residue) : single);
+        }
+        blackhole.consume(amountToBePaidBack);
+    }
+
+    @Benchmark
+    public void createLoanMoney(Blackhole blackhole) {
+        Rate totalRate = Rate.ONE.plus(interestRateRate);
+        Money amountToBePaidBack = loanAmountMoney.multiply(totalRate, RoundingMode.HALF_UP);
+        Money single = loanAmountMoney.multiplyAndDivide(totalRate, numberOfInstallments, RoundingMode.HALF_UP);
+        Money residue = amountToBePaidBack.minus(single.times(numberOfInstallments));
+
+        for (int i = 0; i < numberOfInstallments; i++) {
+            blackhole.consume(i + 1 == numberOfInstallments ? single.plus(residue) : single);
+        }
+        blackhole.consume(amountToBePaidBack);
+    }
+
+    @Benchmark
+    public BigDecimal payLoanBigDecimal() {
+        BigDecimal totalAmountSpent = BigDecimal.ZERO;
+
+        for (int i = 0; i < numberOfInstallments; i++) {
+            BigDecimal amount = installmentAmounts[i];
+            BigDecimal paidAmount = amount
+                    .add(amount.multiply(DISCOUNT_OR_PENALTY_COEFFICIENT.multiply(BigDecimal.valueOf(days[i]))))
+                    .setScale(NumberFormat.getCurrencyInstance().getCurrency().getDefaultFractionDigits(), RoundingMode.HALF_UP);
+
+            totalAmountSpent = totalAmountSpent.add(paidAmount);
+        }
+
+        return totalAmountSpent;
+    }
+
+    @Benchmark
+    public Money payLoanMoney() {
+        Money totalAmountSpent = Money.zero(2);
+
+        for (int i = 0; i < numberOfInstallments; i++) {
+            // Installment amounts still arrive as BigDecimal from the entity, so the conversion is part of the cost
+            Money paidAmount = Money.of(installmentAmounts[i], 2).multiply(Rate.ONE.plus(DISCOUNT_OR_PENALTY_COEFFICIENT_RATE.times(days[i])), RoundingMode.HALF_UP);
+
+            totalAmountSpent = totalAmountSpent.plus(paidAmount);
+        }
+
+        return totalAmountSpent;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LoanMathBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,111 @@
+package com.tanermansur.loan.benchmark;
+
+import com.tanermansur.loan.LoanApplication;
+import com.tanermansur.loan.context.CreateLoanContext;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.entity.LoanInstallment;
+import com.tanermansur.loan.money.Money;
+import com.tanermansur.loan.money.Rate;
+import com.tanermansur.loan.repository.CustomerRepository;
+import com.tanermansur.loan.service.CustomerService;
+import com.tanermansur.loan.service.LoanService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading loans, their installments and their customers with the second-level cache on and off, against an
+ * in-memory H2 database. A real database behind a network hop would widen the gap.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * "-Dexec.args=-cp %classpath com.tanermansur.loan.benchmark.SecondLevelCacheBenchmark"}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SecondLevelCacheBenchmark {
+    private static final int NUMBER_OF_LOANS = 1000;
+
+    @Param({"true", "false"})
+    private boolean cacheEnabled;
+
+    private ConfigurableApplicationContext context;
+    private LoanService loanService;
+    private CustomerService customerService;
+    private Customer customer;
+    private long[] loanIds;
+
+    @Setup
+    public void setUp() {
+        SpringApplication application = new SpringApplication(LoanApplication.class);
+
+        application.setWebApplicationType(WebApplicationType.NONE);
+        context = application.run(
+                "--loan.second-level-cache.enabled=" + cacheEnabled,
+                "--spring.datasource.url=jdbc:h2:mem:second-level-cache-benchmark",
+                "--logging.level.root=WARN");
+
+        loanService = context.getBean(LoanService.class);
+        customerService = context.getBean(CustomerService.class);
+
+        Customer newCustomer = new Customer();
+
+        newCustomer.setName("benchmark");
+        newCustomer.setSurname("customer");
+        newCustomer.setCreditLimit(new BigDecimal("1000000"));
+        customer = context.getBean(CustomerRepository.class).save(newCustomer);
+
+        loanIds = new long[NUMBER_OF_LOANS];
+        for (int i = 0; i < NUMBER_OF_LOANS; i++) {
+            CreateLoanContext createLoanContext = CreateLoanContext.builder()
+                    .now(Instant.parse("2025-02-03T00:00:00.000Z"))
+                    .customer(customer)
+                    .loanAmount(Money.of(new BigDecimal("1000"), 2))
+                    .interestRate(Rate.of(new BigDecimal("0.2")))
+                    .numberOfInstallments(12)
+                    .build();
+
+            createLoanContext.calculateInstallmentAmounts();
+            loanService.createLoan(createLoanContext);
+            loanIds[i] = createLoanContext.getLoan().getId();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<LoanInstallment> getInstallments() {
+        return loanService.getInstallments(customer, loanIds[ThreadLocalRandom.current().nextInt(NUMBER_OF_LOANS)]);
+    }
+
+    @Benchmark
+    public Customer loadCustomer() {
+        Customer reference = new Customer();
+
+        reference.setId(customer.getId());
+
+        return customerService.loadCustomer(reference);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SecondLevelCacheBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
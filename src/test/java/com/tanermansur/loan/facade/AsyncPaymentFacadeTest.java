@@ -0,0 +1,223 @@
+package com.tanermansur.loan.facade;
+
+import com.tanermansur.loan.dto.AsyncPaymentDTO;
+import com.tanermansur.loan.dto.PayLoanRequestDTO;
+import com.tanermansur.loan.dto.PayLoanResponseDTO;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.exception.LoanNotFoundException;
+import com.tanermansur.loan.exception.PaymentNotFoundException;
+import com.tanermansur.loan.exception.QueueFullException;
+import com.tanermansur.loan.money.Money;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class AsyncPaymentFacadeTest {
+    @InjectMocks
+    private AsyncPaymentFacade asyncPaymentFacade;
+
+    @Mock
+    private LoanFacade mockLoanFacade;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final Customer customer = new Customer();
+
+    // Amounts of each transaction, in the order the transactions ran
+    private final List<List<Money>> transactions = Collections.synchronizedList(new ArrayList<>());
+
+    // Holds the first transaction until released, so that the next payments pile up behind it
+    private final CountDownLatch firstTransactionStarted = new CountDownLatch(1);
+    private final CountDownLatch firstTransactionReleased = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(asyncPaymentFacade, "partitions", 1);
+        ReflectionTestUtils.setField(asyncPaymentFacade, "queueCapacity", 2);
+        ReflectionTestUtils.setField(asyncPaymentFacade, "batchSize", 10);
+        ReflectionTestUtils.setField(asyncPaymentFacade, "offerTimeout", Duration.ofMillis(10));
+        ReflectionTestUtils.setField(asyncPaymentFacade, "retryAfter", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(asyncPaymentFacade, "shutdownTimeout", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(asyncPaymentFacade, "outcomeCacheMaximumSize", 100L);
+        ReflectionTestUtils.setField(asyncPaymentFacade, "outcomeCacheTimeToLive", Duration.ofMinutes(1));
+        asyncPaymentFacade.init();
+
+        customer.setId(1L);
+
+        when(mockLoanFacade.validatePaymentAmount(anyString())).thenAnswer(invocationOnMock -> Money.of(new BigDecimal(invocationOnMock.<String>getArgument(0)), 2));
+        when(mockLoanFacade.payLoanInTurn(eq(customer), anyLong(), any())).thenAnswer(invocationOnMock -> {
+            List<Money> paymentAmounts = invocationOnMock.getArgument(2);
+
+            if (transactions.isEmpty()) {
+                firstTransactionStarted.countDown();
+                assertTrue(firstTransactionReleased.await(5, TimeUnit.SECONDS));
+            }
+
+            transactions.add(paymentAmounts);
+
+            List<PayLoanResponseDTO> responses = new ArrayList<>();
+            for (int i = 0; i < paymentAmounts.size(); i++) {
+                PayLoanResponseDTO response = new PayLoanResponseDTO();
+                response.setNumberOfInstallmentsPaid(1);
+
+                responses.add(response);
+            }
+
+            return responses;
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        firstTransactionReleased.countDown();
+        asyncPaymentFacade.destroy();
+    }
+
+    @Test
+    void submitPaymentsOfOneLoanAppliedInOneTransaction() throws InterruptedException {
+        AsyncPaymentDTO firstPayment = asyncPaymentFacade.submitPayment(customer, 1L, request("10"));
+        assertTrue(firstTransactionStarted.await(5, TimeUnit.SECONDS));
+
+        AsyncPaymentDTO secondPayment = asyncPaymentFacade.submitPayment(customer, 1L, request("20"));
+        AsyncPaymentDTO thirdPayment = asyncPaymentFacade.submitPayment(customer, 1L, request("30"));
+
+        assertEquals(AsyncPaymentDTO.Status.PENDING, asyncPaymentFacade.getPayment(customer, secondPayment.getPaymentId()).getStatus());
+        assertEquals(2.0, meterRegistry.get("loan.async-payment.queue.depth").gauge().value());
+
+        firstTransactionReleased.countDown();
+
+        AsyncPaymentDTO outcome = awaitOutcome(thirdPayment);
+
+        assertEquals(AsyncPaymentDTO.Status.COMPLETED, outcome.getStatus());
+        assertEquals(1, outcome.getPayment().getNumberOfInstallmentsPaid());
+        assertEquals(AsyncPaymentDTO.Status.COMPLETED, awaitOutcome(firstPayment).getStatus());
+        assertEquals(List.of(List.of(money("10")), List.of(money("20"), money("30"))), transactions);
+        assertEquals(2, meterRegistry.get("loan.async-payment.batch.size").summary().count());
+    }
+
+    @Test
+    void submitPaymentsOfTwoCustomersToOneLoanAppliedApart() throws InterruptedException {
+        Customer anotherCustomer = new Customer();
+        anotherCustomer.setId(2L);
+
+        when(mockLoanFacade.payLoanInTurn(eq(anotherCustomer), eq(1L), any())).thenThrow(new LoanNotFoundException(1L));
+
+        asyncPaymentFacade.submitPayment(customer, 2L, request("10"));
+        assertTrue(firstTransactionStarted.await(5, TimeUnit.SECONDS));
+
+        AsyncPaymentDTO foreignPayment = asyncPaymentFacade.submitPayment(anotherCustomer, 1L, request("20"));
+        AsyncPaymentDTO ownPayment = asyncPaymentFacade.submitPayment(customer, 1L, request("30"));
+
+        firstTransactionReleased.countDown();
+
+        AsyncPaymentDTO foreignOutcome = awaitOutcome(anotherCustomer, foreignPayment);
+
+        assertEquals(AsyncPaymentDTO.Status.FAILED, foreignOutcome.getStatus());
+        assertEquals("Loan with [loanId: 1] not found", foreignOutcome.getError());
+        assertEquals(AsyncPaymentDTO.Status.COMPLETED, awaitOutcome(ownPayment).getStatus());
+        assertEquals(List.of(List.of(money("10")), List.of(money("30"))), transactions);
+    }
+
+    @Test
+    void submitPaymentWhenQueueIsFull() throws InterruptedException {
+        asyncPaymentFacade.submitPayment(customer, 1L, request("10"));
+        assertTrue(firstTransactionStarted.await(5, TimeUnit.SECONDS));
+
+        asyncPaymentFacade.submitPayment(customer, 1L, request("20"));
+        asyncPaymentFacade.submitPayment(customer, 2L, request("30"));
+
+        QueueFullException exception = assertThrows(QueueFullException.class, () -> asyncPaymentFacade.submitPayment(customer, 1L, request("40")));
+
+        assertEquals(Duration.ofSeconds(1), exception.getRetryAfter());
+        assertEquals(1.0, meterRegistry.get("loan.async-payment.rejected").counter().count());
+    }
+
+    @Test
+    void submitPaymentWhenLoanIsNotFound() throws InterruptedException {
+        firstTransactionReleased.countDown();
+        when(mockLoanFacade.payLoanInTurn(eq(customer), eq(2L), any())).thenThrow(new LoanNotFoundException(2L));
+
+        AsyncPaymentDTO outcome = awaitOutcome(asyncPaymentFacade.submitPayment(customer, 2L, request("10")));
+
+        assertEquals(AsyncPaymentDTO.Status.FAILED, outcome.getStatus());
+        assertNull(outcome.getPayment());
+        assertEquals("Loan with [loanId: 2] not found", outcome.getError());
+    }
+
+    @Test
+    void submitPaymentAfterBatchFailedWithError() throws InterruptedException {
+        firstTransactionReleased.countDown();
+        when(mockLoanFacade.payLoanInTurn(eq(customer), eq(2L), any())).thenThrow(new StackOverflowError("failure"));
+
+        AsyncPaymentDTO outcome = awaitOutcome(asyncPaymentFacade.submitPayment(customer, 2L, request("10")));
+
+        assertEquals(AsyncPaymentDTO.Status.FAILED, outcome.getStatus());
+        assertEquals("Payment could not be applied: failure", outcome.getError());
+
+        // The partition is still draining
+        assertEquals(AsyncPaymentDTO.Status.COMPLETED, awaitOutcome(asyncPaymentFacade.submitPayment(customer, 1L, request("20"))).getStatus());
+    }
+
+    @Test
+    void getPaymentOfAnotherCustomer() {
+        AsyncPaymentDTO payment = asyncPaymentFacade.submitPayment(customer, 1L, request("10"));
+
+        Customer anotherCustomer = new Customer();
+        anotherCustomer.setId(2L);
+
+        assertThrows(PaymentNotFoundException.class, () -> asyncPaymentFacade.getPayment(anotherCustomer, payment.getPaymentId()));
+        assertThrows(PaymentNotFoundException.class, () -> asyncPaymentFacade.getPayment(customer, "unknown"));
+    }
+
+    private AsyncPaymentDTO awaitOutcome(AsyncPaymentDTO payment) throws InterruptedException {
+        return awaitOutcome(customer, payment);
+    }
+
+    private AsyncPaymentDTO awaitOutcome(Customer customer, AsyncPaymentDTO payment) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        AsyncPaymentDTO outcome = asyncPaymentFacade.getPayment(customer, payment.getPaymentId());
+        while (outcome.getStatus() == AsyncPaymentDTO.Status.PENDING && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+
+            outcome = asyncPaymentFacade.getPayment(customer, payment.getPaymentId());
+        }
+
+        return outcome;
+    }
+
+    private static PayLoanRequestDTO request(String amount) {
+        PayLoanRequestDTO request = new PayLoanRequestDTO();
+        request.setAmount(amount);
+
+        return request;
+    }
+
+    private static Money money(String amount) {
+        return Money.of(new BigDecimal(amount), 2);
+    }
+}
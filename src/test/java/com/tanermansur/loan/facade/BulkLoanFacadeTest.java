@@ -0,0 +1,247 @@
+package com.tanermansur.loan.facade;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanermansur.loan.context.CreateLoanContext;
+import com.tanermansur.loan.dto.BulkCreateLoanResultDTO;
+import com.tanermansur.loan.dto.CreateLoanRequestDTO;
+import com.tanermansur.loan.dto.GetLoansRequestDTO;
+import com.tanermansur.loan.dto.LoanDTO;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.entity.Loan;
+import com.tanermansur.loan.exception.InvalidCreateLoanRequestException;
+import com.tanermansur.loan.exception.InvalidGetLoansRequestException;
+import com.tanermansur.loan.fixture.LoanFixture;
+import com.tanermansur.loan.mapper.LoanMapper;
+import com.tanermansur.loan.money.Money;
+import com.tanermansur.loan.money.Rate;
+import com.tanermansur.loan.service.CustomerService;
+import com.tanermansur.loan.service.FormattingService;
+import com.tanermansur.loan.service.LoanService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static com.tanermansur.loan.fixture.FormattingFixture.getFormattingServiceFixture;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class BulkLoanFacadeTest {
+    @InjectMocks
+    private BulkLoanFacade bulkLoanFacade;
+
+    @Mock
+    private LoanFacade mockLoanFacade;
+
+    @Mock
+    private CustomerService mockCustomerService;
+
+    @Mock
+    private LoanService mockLoanService;
+
+    @Spy
+    private FormattingService formattingService = getFormattingServiceFixture();
+
+    @Spy
+    private LoanMapper loanMapper = new LoanMapper(formattingService);
+
+    @Mock
+    private PlatformTransactionManager mockTransactionManager;
+
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate();
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private final Customer customer = new Customer();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(bulkLoanFacade, "chunkSize", 2);
+        transactionTemplate.setTransactionManager(mockTransactionManager);
+
+        customer.setId(1L);
+        customer.setCreditLimit(new BigDecimal("1000"));
+
+        when(mockCustomerService.loadCustomer(customer)).thenReturn(customer);
+        when(mockLoanFacade.newCreateLoanContext(eq(customer), any())).thenAnswer(invocationOnMock -> {
+            CreateLoanRequestDTO request = invocationOnMock.getArgument(1);
+
+            if (request.getNumberOfInstallments() != 6) {
+                throw InvalidCreateLoanRequestException.withInvalidInstallmentCount(request.getNumberOfInstallments(), "[6]");
+            }
+
+            CreateLoanContext context = CreateLoanContext.builder()
+                    .customer(customer)
+                    .loanAmount(Money.of(request.getLoanAmount(), 2))
+                    .interestRate(Rate.of(new BigDecimal(request.getInterestRate())))
+                    .numberOfInstallments(request.getNumberOfInstallments())
+                    .build();
+
+            context.calculateInstallmentAmounts();
+
+            return context;
+        });
+        doAnswer(invocationOnMock -> {
+            CreateLoanContext context = invocationOnMock.getArgument(0);
+            Loan loan = new Loan();
+
+            loan.setId(context.getLoanAmount().toBigDecimal().longValue());
+            context.setLoan(loan);
+
+            return null;
+        }).when(mockLoanService).createLoan(any());
+    }
+
+    @Test
+    void createLoansFromJsonArray() throws IOException {
+        when(mockCustomerService.tryReserveCreditLimit(eq(customer), any(), any())).thenReturn(true);
+
+        List<BulkCreateLoanResultDTO> results = bulkLoanFacade.createLoans(customer, stream("""
+                [
+                {"numberOfInstallments": 6, "interestRate": "0.1", "loanAmount": "10"},
+                {"numberOfInstallments": 7, "interestRate": "0.1", "loanAmount": "20"},
+                {"numberOfInstallments": 6, "interestRate": "0.1", "loanAmount": "30"}
+                ]
+                """));
+
+        assertEquals(3, results.size());
+        assertEquals(10L, results.get(0).getLoanId());
+        assertNull(results.get(0).getError());
+        assertNull(results.get(1).getLoanId());
+        assertNotNull(results.get(1).getError());
+        assertEquals(30L, results.get(2).getLoanId());
+        assertEquals(2, results.get(2).getIndex());
+        verify(mockLoanService, times(2)).createLoan(any());
+    }
+
+    @Test
+    void createLoansFromNdjsonInChunks() throws IOException {
+        when(mockCustomerService.tryReserveCreditLimit(eq(customer), any(), any())).thenReturn(true, false, true);
+
+        List<BulkCreateLoanResultDTO> results = bulkLoanFacade.createLoans(customer, stream("""
+                {"numberOfInstallments": 6, "interestRate": "0.1", "loanAmount": "10"}
+                {"numberOfInstallments": 6, "interestRate": "0.1", "loanAmount": "20"}
+                {"numberOfInstallments": 6, "interestRate": "0.1", "loanAmount": "30"}
+                """));
+
+        assertEquals(3, results.size());
+        assertEquals(10L, results.get(0).getLoanId());
+        assertNull(results.get(1).getLoanId());
+        assertNotNull(results.get(1).getError());
+        assertEquals(30L, results.get(2).getLoanId());
+        verify(mockTransactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    void createLoansWhenChunkIsRolledBack() throws IOException {
+        when(mockCustomerService.tryReserveCreditLimit(eq(customer), any(), any())).thenReturn(true);
+        doThrow(new IllegalStateException("failure")).when(mockLoanService).createLoan(argThat(context -> context.getLoanAmount().toBigDecimal().intValue() == 20));
+
+        List<BulkCreateLoanResultDTO> results = bulkLoanFacade.createLoans(customer, stream("""
+                {"numberOfInstallments": 6, "interestRate": "0.1", "loanAmount": "10"}
+                {"numberOfInstallments": 6, "interestRate": "0.1", "loanAmount": "20"}
+                {"numberOfInstallments": 6, "interestRate": "0.1", "loanAmount": "30"}
+                """));
+
+        assertNull(results.get(0).getLoanId());
+        assertNotNull(results.get(0).getError());
+        assertNull(results.get(1).getLoanId());
+        assertNotNull(results.get(1).getError());
+        assertEquals(30L, results.get(2).getLoanId());
+        verify(mockTransactionManager).rollback(any());
+    }
+
+    @Test
+    void createLoansWhenStreamIsMalformed() throws IOException {
+        when(mockCustomerService.tryReserveCreditLimit(eq(customer), any(), any())).thenReturn(true);
+
+        List<BulkCreateLoanResultDTO> results = bulkLoanFacade.createLoans(customer, stream("""
+                {"numberOfInstallments": 6, "interestRate": "0.1", "loanAmount": "10"}
+                {"numberOfInstallments": 6,
+                """));
+
+        assertEquals(2, results.size());
+        assertEquals(10L, results.get(0).getLoanId());
+        assertNotNull(results.get(1).getError());
+    }
+
+    @Test
+    void exportLoansAsNdjson() throws IOException {
+        Loan firstLoan = LoanFixture.getLoanFixture(customer);
+        Loan secondLoan = LoanFixture.getLoanFixture(customer);
+
+        secondLoan.setId(2L);
+        doAnswer(invocationOnMock -> {
+            Consumer<List<Loan>> chunkConsumer = invocationOnMock.getArgument(2);
+
+            chunkConsumer.accept(List.of(firstLoan));
+            chunkConsumer.accept(List.of(secondLoan));
+
+            return null;
+        }).when(mockLoanService).exportLoans(eq(1L), eq(false), any());
+
+        GetLoansRequestDTO request = new GetLoansRequestDTO();
+        request.setFields(Set.of("id", "paid"));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        bulkLoanFacade.exportLoans(customer, request).writeTo(outputStream);
+
+        assertEquals("""
+                {"id":1,"paid":false}
+                {"id":2,"paid":false}
+                """, outputStream.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void exportAllLoansWithCustomerIds() throws IOException {
+        doAnswer(invocationOnMock -> {
+            Consumer<List<Loan>> chunkConsumer = invocationOnMock.getArgument(2);
+
+            chunkConsumer.accept(List.of(LoanFixture.getLoanFixture(customer)));
+
+            return null;
+        }).when(mockLoanService).exportLoans(isNull(), eq(true), any());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        bulkLoanFacade.exportAllLoans(new GetLoansRequestDTO()).writeTo(outputStream);
+
+        LoanDTO loan = objectMapper.readValue(outputStream.toString(StandardCharsets.UTF_8), LoanDTO.class);
+
+        assertEquals(1L, loan.getId());
+        assertEquals(1L, loan.getCustomerId());
+        assertEquals(6, loan.getInstallments().size());
+    }
+
+    @Test
+    void exportLoansWhenFieldIsUnknown() {
+        GetLoansRequestDTO request = new GetLoansRequestDTO();
+        request.setFields(Set.of("unknown"));
+
+        assertThrows(InvalidGetLoansRequestException.class, () -> bulkLoanFacade.exportLoans(customer, request));
+        verify(mockLoanService, never()).exportLoans(any(), anyBoolean(), any());
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,240 @@
+package com.tanermansur.loan.facade;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanermansur.loan.dto.BulkPayLoanReportDTO;
+import com.tanermansur.loan.dto.BulkPayLoanResultDTO;
+import com.tanermansur.loan.dto.PayLoanRequestDTO;
+import com.tanermansur.loan.dto.PayLoanResponseDTO;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.exception.InvalidPayLoanRequestException;
+import com.tanermansur.loan.service.CustomerService;
+import com.tanermansur.loan.service.LoanService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class BulkPayLoanFacadeTest {
+    @InjectMocks
+    private BulkPayLoanFacade bulkPayLoanFacade;
+
+    @Mock
+    private LoanFacade mockLoanFacade;
+
+    @Mock
+    private CustomerService mockCustomerService;
+
+    @Mock
+    private LoanService mockLoanService;
+
+    @Mock
+    private PlatformTransactionManager mockTransactionManager;
+
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate();
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    private Path reportDirectory;
+
+    // Amounts each loan was paid with, in the order the payments were applied
+    private final Map<Long, List<String>> payments = Collections.synchronizedMap(new HashMap<>());
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(bulkPayLoanFacade, "parallelism", 2);
+        ReflectionTestUtils.setField(bulkPayLoanFacade, "chunkSize", 2);
+        ReflectionTestUtils.setField(bulkPayLoanFacade, "queueCapacity", 2);
+        ReflectionTestUtils.setField(bulkPayLoanFacade, "reportDirectory", reportDirectory);
+        bulkPayLoanFacade.init();
+
+        transactionTemplate.setTransactionManager(mockTransactionManager);
+
+        when(mockCustomerService.loadCustomer(any())).thenAnswer(invocationOnMock -> invocationOnMock.getArgument(0));
+        when(mockLoanService.isCustomerLoan(any(), anyLong())).thenAnswer(invocationOnMock -> invocationOnMock.<Long>getArgument(1) != 99L);
+        when(mockLoanFacade.payLoan(any(), anyLong(), any())).thenAnswer(invocationOnMock -> {
+            Customer customer = invocationOnMock.getArgument(0);
+            long loanId = invocationOnMock.getArgument(1);
+            String amount = invocationOnMock.<PayLoanRequestDTO>getArgument(2).getAmount();
+
+            if (customer.getId() == 2L) {
+                throw new IllegalStateException("failure");
+            }
+
+            if (customer.getId() == 3L) {
+                throw new StackOverflowError("failure");
+            }
+
+            if (amount.startsWith("-")) {
+                throw InvalidPayLoanRequestException.withInvalidAmount(amount);
+            }
+
+            payments.computeIfAbsent(loanId, key -> Collections.synchronizedList(new ArrayList<>())).add(amount);
+
+            PayLoanResponseDTO response = new PayLoanResponseDTO();
+            response.setNumberOfInstallmentsPaid(1);
+
+            return response;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        bulkPayLoanFacade.destroy();
+    }
+
+    @Test
+    void payLoansFromCsvInFileOrderPerLoan() throws IOException {
+        StringBuilder csv = new StringBuilder("customerId,loanId,amount\n");
+        for (int i = 0; i < 50; i++) {
+            csv.append("1,10,").append(i).append('\n');
+            csv.append("4,40,").append(i).append('\n');
+        }
+        csv.append("x,10,1\n");
+        csv.append("1,10\n");
+
+        BulkPayLoanReportDTO report = bulkPayLoanFacade.payLoans(stream(csv.toString()), BulkPayLoanFacade.TEXT_CSV);
+
+        List<String> amounts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            amounts.add(Integer.toString(i));
+        }
+
+        assertEquals(amounts, payments.get(10L));
+        assertEquals(amounts, payments.get(40L));
+        assertEquals(102, report.getNumberOfPayments());
+        assertEquals(100, report.getNumberOfPaymentsApplied());
+        assertEquals(2, report.getNumberOfPaymentsFailed());
+
+        List<BulkPayLoanResultDTO> results = readReport(report);
+
+        assertEquals(102, results.size());
+        assertEquals(102, results.stream().map(BulkPayLoanResultDTO::getIndex).distinct().count());
+        assertNotNull(results.stream().filter(result -> result.getIndex() == 100).findFirst().orElseThrow().getError());
+    }
+
+    @Test
+    void payLoansWhenChunkIsRolledBack() throws IOException {
+        BulkPayLoanReportDTO report = bulkPayLoanFacade.payLoans(stream("""
+                {"customerId": 1, "loanId": 10, "amount": "10"}
+                {"customerId": 2, "loanId": 20, "amount": "10"}
+                {"customerId": 1, "loanId": 10, "amount": "-1"}
+                {"customerId": 2, "loanId": 20, "amount": "20"}
+                {"customerId": 1, "loanId": 10, "amount": "30"}
+                """), MediaType.APPLICATION_NDJSON);
+
+        // Payments of the other partition go through while every payment of the failing customer is reported
+        assertEquals(List.of("10", "30"), payments.get(10L));
+        assertEquals(2, report.getNumberOfPaymentsApplied());
+        assertEquals(3, report.getNumberOfPaymentsFailed());
+
+        for (BulkPayLoanResultDTO result : readReport(report)) {
+            if (result.getCustomerId() == 2L) {
+                assertNull(result.getPayment());
+                assertTrue(result.getError().startsWith("Payment could not be applied"));
+            }
+        }
+    }
+
+    @Test
+    void payLoansWhenChunkFailsWithError() throws IOException {
+        // Customers 1 and 3 share a partition, which must keep draining after the failed chunk. How much of customer 1's
+        // payments the failed chunk takes with it depends on how fast the worker drains the queue
+        BulkPayLoanReportDTO report = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> bulkPayLoanFacade.payLoans(stream("""
+                {"customerId": 3, "loanId": 30, "amount": "10"}
+                {"customerId": 3, "loanId": 30, "amount": "20"}
+                {"customerId": 1, "loanId": 10, "amount": "10"}
+                {"customerId": 1, "loanId": 10, "amount": "20"}
+                {"customerId": 1, "loanId": 10, "amount": "30"}
+                """), MediaType.APPLICATION_NDJSON));
+
+        assertEquals("30", payments.get(10L).get(payments.get(10L).size() - 1));
+        assertEquals(5, report.getNumberOfPayments());
+        assertEquals(payments.get(10L).size(), report.getNumberOfPaymentsApplied());
+        assertTrue(report.getNumberOfPaymentsFailed() >= 2);
+    }
+
+    @Test
+    void payLoansAfterIngestionWasInterrupted() {
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(InterruptedIOException.class, () -> bulkPayLoanFacade.payLoans(stream("""
+                    {"customerId": 1, "loanId": 10, "amount": "10"}
+                    """), MediaType.APPLICATION_NDJSON));
+        } finally {
+            Thread.interrupted();
+        }
+
+        // The workers of the aborted file were released, so the pool is free for the next one
+        BulkPayLoanReportDTO report = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> bulkPayLoanFacade.payLoans(stream("""
+                {"customerId": 1, "loanId": 10, "amount": "10"}
+                """), MediaType.APPLICATION_NDJSON));
+
+        assertEquals(1, report.getNumberOfPaymentsApplied());
+    }
+
+    @Test
+    void payLoansWhenLoanIsNotTheCustomers() throws IOException {
+        BulkPayLoanReportDTO report = bulkPayLoanFacade.payLoans(stream("""
+                {"customerId": 1, "loanId": 10, "amount": "10"}
+                {"customerId": 1, "loanId": 99, "amount": "20"}
+                """), MediaType.APPLICATION_NDJSON);
+
+        assertEquals(List.of("10"), payments.get(10L));
+        assertEquals(1, report.getNumberOfPaymentsApplied());
+        assertEquals(1, report.getNumberOfPaymentsFailed());
+        verify(mockLoanFacade, never()).payLoan(any(), eq(99L), any());
+    }
+
+    @Test
+    void payLoansWhenStreamIsMalformed() throws IOException {
+        BulkPayLoanReportDTO report = bulkPayLoanFacade.payLoans(stream("""
+                {"customerId": 1, "loanId": 10, "amount": "10"}
+                {"loanId": 10, "amount": "10"}
+                {"customerId": 1,
+                """), MediaType.APPLICATION_NDJSON);
+
+        assertEquals(3, report.getNumberOfPayments());
+        assertEquals(1, report.getNumberOfPaymentsApplied());
+        assertEquals(2, report.getNumberOfPaymentsFailed());
+    }
+
+    private List<BulkPayLoanResultDTO> readReport(BulkPayLoanReportDTO report) throws IOException {
+        List<BulkPayLoanResultDTO> results = new ArrayList<>();
+
+        for (String line : Files.readAllLines(Path.of(report.getReportFile()))) {
+            results.add(objectMapper.readValue(line, BulkPayLoanResultDTO.class));
+        }
+
+        return results;
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,105 @@
+package com.tanermansur.loan.facade;
+
+import com.tanermansur.loan.dto.BulkPayLoanReportDTO;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.entity.Loan;
+import com.tanermansur.loan.entity.LoanInstallment;
+import com.tanermansur.loan.repository.CustomerRepository;
+import com.tanermansur.loan.repository.LoanRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:loan-bulk-payment",
+        "loan.bulk-payment.parallelism=1"
+})
+@ActiveProfiles("test")
+class BulkPayLoanFacadeTransactionTest {
+    private static final int NUMBER_OF_INSTALLMENTS = 12;
+
+    @Autowired
+    private BulkPayLoanFacade bulkPayLoanFacade;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void payLoansWhenPaymentInTheMiddleOfChunkIsRejected() throws IOException {
+        Customer customer = new Customer();
+
+        customer.setName("bulk");
+        customer.setSurname("payer");
+        customer.setCreditLimit(new BigDecimal("1000"));
+        customer.setUsedCreditLimit(new BigDecimal("120"));
+        customer = customerRepository.save(customer);
+
+        long loanId = loanRepository.save(newLoan(customer)).getId();
+
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            csv.append(customer.getId()).append(',').append(loanId).append(",20\n");
+
+            if (i == 2) {
+                csv.append(customer.getId()).append(",999999,20\n");
+            }
+        }
+
+        BulkPayLoanReportDTO report = bulkPayLoanFacade.payLoans(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)), BulkPayLoanFacade.TEXT_CSV);
+
+        // Only the unknown loan fails, the payments sharing its chunk are kept
+        assertEquals(5, report.getNumberOfPaymentsApplied());
+        assertEquals(1, report.getNumberOfPaymentsFailed());
+        assertEquals(NUMBER_OF_INSTALLMENTS - 5, countUnpaidInstallments(loanId));
+    }
+
+    private long countUnpaidInstallments(long loanId) {
+        return entityManager.createQuery("select count(i) from LoanInstallment i where i.loan.id = :loanId and i.paid = false", Long.class)
+                .setParameter("loanId", loanId)
+                .getSingleResult();
+    }
+
+    private static Loan newLoan(Customer customer) {
+        Loan loan = new Loan();
+        List<LoanInstallment> installments = new ArrayList<>();
+
+        loan.setCustomer(customer);
+        loan.setLoanAmount(new BigDecimal("120"));
+        loan.setNumberOfInstallments(NUMBER_OF_INSTALLMENTS);
+        loan.setCreateDate(Timestamp.from(Instant.parse("2025-01-03T00:00:00.000Z")));
+
+        // All past due, so that each payment of 20 covers exactly one installment with its penalty
+        for (int month = 1; month <= NUMBER_OF_INSTALLMENTS; month++) {
+            LoanInstallment installment = new LoanInstallment();
+
+            installment.setLoan(loan);
+            installment.setAmount(BigDecimal.TEN);
+            installment.setDueDate(Date.valueOf(LocalDate.parse("2025-01-01").plusMonths(month)));
+            installments.add(installment);
+        }
+        loan.setInstallments(installments);
+
+        return loan;
+    }
+}
@@ -0,0 +1,131 @@
+package com.tanermansur.loan.facade;
+
+import com.tanermansur.loan.dto.PayLoanRequestDTO;
+import com.tanermansur.loan.dto.PayLoanResponseDTO;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.entity.Loan;
+import com.tanermansur.loan.entity.LoanInstallment;
+import com.tanermansur.loan.repository.CustomerRepository;
+import com.tanermansur.loan.repository.LoanRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Slf4j
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:loan-contention",
+        "loan.retry.max-attempts=50"
+})
+@ActiveProfiles("test")
+class LoanFacadeContentionTest {
+    private static final int THREADS = 8;
+    private static final int NUMBER_OF_INSTALLMENTS = 12;
+
+    @Autowired
+    private LoanFacade loanFacade;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void payLoanWhenManyThreadsPayOneLoan() throws Exception {
+        Customer customer = new Customer();
+
+        customer.setName("contended");
+        customer.setSurname("loan");
+        customer.setCreditLimit(new BigDecimal("1000"));
+        customer.setUsedCreditLimit(new BigDecimal("120"));
+        customer = customerRepository.save(customer);
+
+        long loanId = loanRepository.save(newLoan(customer)).getId();
+
+        PayLoanRequestDTO request = new PayLoanRequestDTO();
+        request.setAmount("20");
+
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        Customer payingCustomer = customer;
+
+        List<Future<PayLoanResponseDTO>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executorService.submit(() -> {
+                start.await();
+
+                return loanFacade.payLoan(payingCustomer, loanId, request);
+            }));
+        }
+
+        start.countDown();
+
+        // Every payment goes through and pays an installment of its own, whatever it raced with
+        int numberOfInstallmentsPaid = 0;
+        for (Future<PayLoanResponseDTO> future : futures) {
+            numberOfInstallmentsPaid += future.get(1, TimeUnit.MINUTES).getNumberOfInstallmentsPaid();
+        }
+
+        executorService.shutdown();
+
+        double conflicts = meterRegistry.get("loan.optimistic-lock.conflicts").tag("operation", "payLoan").counters().stream().mapToDouble(counter -> counter.count()).sum();
+        double retries = meterRegistry.find("loan.optimistic-lock.retries").tag("operation", "payLoan").counters().stream().mapToDouble(counter -> counter.count()).sum();
+
+        log.info("{} concurrent payments of one loan ran into {} conflicts", THREADS, conflicts);
+
+        assertEquals(THREADS, numberOfInstallmentsPaid);
+        assertEquals(NUMBER_OF_INSTALLMENTS - THREADS, countUnpaidInstallments(loanId));
+        assertEquals(conflicts, retries);
+        assertEquals(0, new BigDecimal("40").compareTo(customerRepository.findById(customer.getId()).orElseThrow().getUsedCreditLimit()));
+    }
+
+    private long countUnpaidInstallments(long loanId) {
+        return entityManager.createQuery("select count(i) from LoanInstallment i where i.loan.id = :loanId and i.paid = false", Long.class)
+                .setParameter("loanId", loanId)
+                .getSingleResult();
+    }
+
+    private static Loan newLoan(Customer customer) {
+        Loan loan = new Loan();
+        List<LoanInstallment> installments = new ArrayList<>();
+
+        loan.setCustomer(customer);
+        loan.setLoanAmount(new BigDecimal("120"));
+        loan.setNumberOfInstallments(NUMBER_OF_INSTALLMENTS);
+        loan.setCreateDate(Timestamp.from(Instant.parse("2025-01-03T00:00:00.000Z")));
+
+        // All past due, so that each payment of 20 covers exactly one installment with its penalty
+        for (int month = 1; month <= NUMBER_OF_INSTALLMENTS; month++) {
+            LoanInstallment installment = new LoanInstallment();
+
+            installment.setLoan(loan);
+            installment.setAmount(BigDecimal.TEN);
+            installment.setDueDate(Date.valueOf(LocalDate.parse("2025-01-01").plusMonths(month)));
+            installments.add(installment);
+        }
+        loan.setInstallments(installments);
+
+        return loan;
+    }
+}
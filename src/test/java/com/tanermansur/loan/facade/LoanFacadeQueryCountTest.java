@@ -0,0 +1,243 @@
+package com.tanermansur.loan.facade;
+
+import com.tanermansur.loan.dto.CreateLoanRequestDTO;
+import com.tanermansur.loan.dto.GetLoansRequestDTO;
+import com.tanermansur.loan.dto.LoanDTO;
+import com.tanermansur.loan.dto.PayLoanRequestDTO;
+import com.tanermansur.loan.dto.PayLoanResponseDTO;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.entity.Loan;
+import com.tanermansur.loan.entity.LoanInstallment;
+import com.tanermansur.loan.exception.InsufficientCustomerLimitException;
+import com.tanermansur.loan.repository.CustomerRepository;
+import com.tanermansur.loan.repository.LoanRepository;
+import com.tanermansur.loan.repository.LoanSpecifications;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:loan-query-count",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "loan.export.chunk-size=25"
+})
+@ActiveProfiles("test")
+class LoanFacadeQueryCountTest {
+    private static final int NUMBER_OF_LOANS = 60;
+
+    @Autowired
+    private LoanFacade loanFacade;
+
+    @Autowired
+    private BulkLoanFacade bulkLoanFacade;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Customer customer;
+
+    @BeforeEach
+    void setUp() {
+        customer = new Customer();
+
+        customer.setName("query" + System.nanoTime());
+        customer.setSurname("customer");
+        customer.setCreditLimit(new BigDecimal("100000"));
+        customer = customerRepository.save(customer);
+
+        List<Loan> loans = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_LOANS; i++) {
+            loans.add(newLoan(customer));
+        }
+        loanRepository.saveAll(loans);
+    }
+
+    @Test
+    void getLoansQueryCountDoesNotGrowWithPageSize() {
+        long smallPageQueries = countQueries(() -> loanFacade.getLoans(customer, new GetLoansRequestDTO(), 5, 0));
+        long largePageQueries = countQueries(() -> loanFacade.getLoans(customer, new GetLoansRequestDTO(), 50, 0));
+
+        // Page of loans, their installments and the total count
+        assertEquals(3, smallPageQueries);
+        assertEquals(smallPageQueries, largePageQueries);
+    }
+
+    @Test
+    void getLoansByCursorQueryCountDoesNotGrowWithPageSize() {
+        long smallPageQueries = countQueries(() -> loanFacade.getLoans(customer, new GetLoansRequestDTO(), 5, ""));
+        long largePageQueries = countQueries(() -> loanFacade.getLoans(customer, new GetLoansRequestDTO(), 50, ""));
+
+        // Window of loans and their installments
+        assertEquals(2, smallPageQueries);
+        assertEquals(smallPageQueries, largePageQueries);
+    }
+
+    @Test
+    void getLoansWithoutInstallmentsSkipsInstallmentQuery() {
+        GetLoansRequestDTO request = new GetLoansRequestDTO();
+
+        request.setFields(Set.of("id", "paid", "numberOfInstallments"));
+
+        // Page of loans and the total count, then the window of loans alone
+        assertEquals(2, countQueries(() -> loanFacade.getLoans(customer, request, 50, 0)));
+        assertEquals(1, countQueries(() -> loanFacade.getLoans(customer, request, 50, "")));
+    }
+
+    @Test
+    void exportLoansQueryCountGrowsWithChunksOnly() throws IOException {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        statistics.clear();
+        bulkLoanFacade.exportLoans(customer, new GetLoansRequestDTO()).writeTo(outputStream);
+
+        // One forward-only read of the loans, then the installments of each chunk of 25 loans
+        assertEquals(4, statistics.getPrepareStatementCount());
+        assertEquals(NUMBER_OF_LOANS, outputStream.toString().lines().count());
+    }
+
+    @Test
+    void getLoanETagReadsVersionOnly() {
+        long loanId = loanRepository.findAll(LoanSpecifications.matching(customer.getId(), new GetLoansRequestDTO())).get(0).getId();
+
+        assertEquals(1, countQueries(() -> loanFacade.getLoanETag(customer, loanId)));
+    }
+
+    @Test
+    void quotePaymentFlushesNothing() {
+        long loanId = loanRepository.findAll(LoanSpecifications.matching(customer.getId(), new GetLoansRequestDTO())).get(0).getId();
+        PayLoanRequestDTO request = new PayLoanRequestDTO();
+
+        request.setAmount("20");
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        loanFacade.quotePayment(customer, loanId, request);
+
+        // Read-only, so the schedule is neither dirty-checked nor flushed on commit
+        assertEquals(1, statistics.getSuccessfulTransactionCount());
+        assertEquals(0, statistics.getFlushCount());
+    }
+
+    @Test
+    void createLoanCommitsOnce() {
+        CreateLoanRequestDTO request = new CreateLoanRequestDTO();
+
+        request.setLoanAmount(new BigDecimal("60"));
+        request.setNumberOfInstallments(6);
+        request.setInterestRate("0.1");
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        loanFacade.createLoan(customer, request);
+
+        // The limit is charged, then the loan and its installments go out as one batch
+        assertEquals(1, statistics.getTransactionCount());
+        assertEquals(1, statistics.getSuccessfulTransactionCount());
+        assertEquals(0, new BigDecimal("66").compareTo(customerRepository.findById(customer.getId()).orElseThrow().getUsedCreditLimit()));
+    }
+
+    @Test
+    void createLoanChargesNothingWhenLimitIsInsufficient() {
+        CreateLoanRequestDTO request = new CreateLoanRequestDTO();
+
+        request.setLoanAmount(new BigDecimal("100001"));
+        request.setNumberOfInstallments(6);
+        request.setInterestRate("0.5");
+
+        long numberOfLoans = loanRepository.count();
+
+        assertThrows(InsufficientCustomerLimitException.class, () -> loanFacade.createLoan(customer, request));
+        assertEquals(numberOfLoans, loanRepository.count());
+    }
+
+    @Test
+    void payLoanCommitsOnce() {
+        long loanId = loanRepository.findAll(LoanSpecifications.matching(customer.getId(), new GetLoansRequestDTO())).get(0).getId();
+        PayLoanRequestDTO request = new PayLoanRequestDTO();
+
+        request.setAmount("100");
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        PayLoanResponseDTO response = loanFacade.payLoan(customer, loanId, request);
+
+        assertEquals(3, response.getNumberOfInstallmentsPaid());
+        assertEquals(1, statistics.getTransactionCount());
+        assertEquals(1, statistics.getSuccessfulTransactionCount());
+    }
+
+    @Test
+    void getLoansMapsInstallmentsInDueDateOrder() {
+        Page<LoanDTO> loans = loanFacade.getLoans(customer, new GetLoansRequestDTO(), 5, 0);
+
+        assertEquals(5, loans.getContent().size());
+        for (LoanDTO loan : loans) {
+            assertEquals(3, loan.getInstallments().size());
+            assertEquals(loan.getInstallments().stream().map(installment -> installment.getDueDate()).sorted().toList(),
+                    loan.getInstallments().stream().map(installment -> installment.getDueDate()).toList());
+        }
+    }
+
+    private long countQueries(Supplier<?> listing) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        listing.get();
+
+        return statistics.getPrepareStatementCount();
+    }
+
+    private static Loan newLoan(Customer customer) {
+        Loan loan = new Loan();
+        List<LoanInstallment> installments = new ArrayList<>();
+
+        loan.setCustomer(customer);
+        loan.setLoanAmount(new BigDecimal("30"));
+        loan.setNumberOfInstallments(3);
+        loan.setCreateDate(Timestamp.from(Instant.parse("2025-02-03T00:00:00.000Z")));
+
+        // Saved out of due date order on purpose
+        for (int month : new int[]{3, 1, 2}) {
+            LoanInstallment installment = new LoanInstallment();
+
+            installment.setLoan(loan);
+            installment.setAmount(BigDecimal.TEN);
+            installment.setDueDate(Date.valueOf(LocalDate.parse("2025-02-01").plusMonths(month)));
+            installments.add(installment);
+        }
+        loan.setInstallments(installments);
+
+        return loan;
+    }
+}
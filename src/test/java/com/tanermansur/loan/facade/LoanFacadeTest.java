@@ -6,31 +6,57 @@ import com.tanermansur.loan.entity.Customer;
 import com.tanermansur.loan.entity.Loan;
 import com.tanermansur.loan.entity.LoanInstallment;
 import com.tanermansur.loan.exception.InvalidCreateLoanRequestException;
+import com.tanermansur.loan.exception.InvalidGetLoansRequestException;
 import com.tanermansur.loan.exception.InvalidPayLoanRequestException;
 import com.tanermansur.loan.exception.LoanNotFoundException;
+import com.tanermansur.loan.mapper.LoanMapper;
+import com.tanermansur.loan.money.Money;
 import com.tanermansur.loan.service.CustomerService;
-import com.tanermansur.loan.service.TimeService;
+import com.tanermansur.loan.service.FormattingService;
 import com.tanermansur.loan.service.LoanService;
+import com.tanermansur.loan.service.RetryService;
+import com.tanermansur.loan.service.TimeService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.modelmapper.ModelMapper;
+import org.mockito.Spy;
+import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.text.NumberFormat;
 import java.text.ParseException;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
+import static com.tanermansur.loan.fixture.FormattingFixture.getFormattingServiceFixture;
 import static com.tanermansur.loan.fixture.LoanFixture.getLoanFixture;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(SpringExtension.class)
@@ -47,8 +73,28 @@ class LoanFacadeTest {
     @Mock
     private TimeService mockTimeService;
 
+    @Spy
+    private FormattingService formattingService = getFormattingServiceFixture();
+
+    @Spy
+    private LoanMapper loanMapper = new LoanMapper(formattingService);
+
     @Mock
-    private ModelMapper mockModelMapper;
+    private PlatformTransactionManager mockTransactionManager;
+
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate();
+
+    @Spy
+    private RetryService retryService = new RetryService(new SimpleMeterRegistry());
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate.setTransactionManager(mockTransactionManager);
+        ReflectionTestUtils.setField(retryService, "maxAttempts", 2);
+        ReflectionTestUtils.setField(retryService, "initialBackoff", Duration.ZERO);
+        ReflectionTestUtils.setField(retryService, "maxBackoff", Duration.ZERO);
+    }
 
     @Test
     void createLoanWhenNumberOfInstallmentsIsInvalid() {
@@ -117,6 +163,19 @@ class LoanFacadeTest {
         assertThrows(InvalidCreateLoanRequestException.class, () -> loanFacade.createLoan(customer, request));
     }
 
+    @Test
+    void createLoanWhenLoanAmountHasFractionsOfMinorUnit() {
+        Customer customer = mock(Customer.class);
+        CreateLoanRequestDTO request = mock(CreateLoanRequestDTO.class);
+
+        when(request.getNumberOfInstallments()).thenReturn(6);
+        when(request.getInterestRate()).thenReturn("0.1");
+        when(request.getLoanAmount()).thenReturn(new BigDecimal("60.005"));
+
+        assertThrows(InvalidCreateLoanRequestException.class, () -> loanFacade.createLoan(customer, request));
+        verifyNoInteractions(mockCustomerService);
+    }
+
     @Test
     void createLoan() {
         Customer customer = mock(Customer.class);
@@ -127,6 +186,7 @@ class LoanFacadeTest {
         when(request.getNumberOfInstallments()).thenReturn(6);
         when(request.getInterestRate()).thenReturn("0.1");
         when(request.getLoanAmount()).thenReturn(new BigDecimal("60"));
+        when(mockCustomerService.loadCustomer(customer)).thenReturn(customer);
 
         doAnswer(invocationOnMock -> {
             ((CreateLoanContext) (invocationOnMock.getArgument(0))).setLoan(loan);
@@ -138,7 +198,7 @@ class LoanFacadeTest {
 
         assertNotNull(loanDTO);
         assertEquals(1L, loanDTO.getId());
-        assertFalse(loanDTO.isPaid());
+        assertFalse(loanDTO.getPaid());
         assertEquals(6, loanDTO.getNumberOfInstallments());
         assertEquals(0, loanDTO.getInstallments().stream()
                 .map(LoanInstallmentDTO::getAmount)
@@ -162,22 +222,43 @@ class LoanFacadeTest {
             assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("11")), loanInstallment.getAmount());
         }
 
-        verify(customer).setUsedCreditLimit(new BigDecimal("66"));
-        verify(mockCustomerService).updateCustomer(customer);
+        verify(mockCustomerService).reserveCreditLimit(customer, money("60"), money("66"));
+        verify(mockCustomerService, never()).releaseCreditLimit(any(), any());
+    }
+
+    @Test
+    void createLoanWhenLoanCannotBeCreated() {
+        Customer customer = mock(Customer.class);
+        CreateLoanRequestDTO request = mock(CreateLoanRequestDTO.class);
+
+        when(request.getNumberOfInstallments()).thenReturn(6);
+        when(request.getInterestRate()).thenReturn("0.1");
+        when(request.getLoanAmount()).thenReturn(new BigDecimal("60"));
+        when(mockCustomerService.loadCustomer(customer)).thenReturn(customer);
+
+        doThrow(new IllegalStateException()).when(mockLoanService).createLoan(any());
+
+        assertThrows(IllegalStateException.class, () -> loanFacade.createLoan(customer, request));
+
+        // The charge is rolled back with the loan rather than released afterwards
+        verify(mockCustomerService).reserveCreditLimit(customer, money("60"), money("66"));
+        verify(mockCustomerService, never()).releaseCreditLimit(any(), any());
+        verify(mockTransactionManager).rollback(any());
+        verify(mockTransactionManager, never()).commit(any());
     }
 
     @Test
     void getLoans() {
-        GetLoansRequestDTO getLoansRequestDTO = mock(GetLoansRequestDTO.class);
+        GetLoansRequestDTO getLoansRequestDTO = new GetLoansRequestDTO();
         Customer customer = mock(Customer.class);
         Loan loan = mock(Loan.class);
         LoanDTO loanDTO = mock(LoanDTO.class);
 
-        when(mockModelMapper.map(loan, LoanDTO.class)).thenReturn(loanDTO);
+        doReturn(loanDTO).when(loanMapper).toLoanDTO(eq(loan), any());
 
         Page<Loan> loanPage = new PageImpl<>(Collections.singletonList(loan));
 
-        when(mockLoanService.getLoans(customer, getLoansRequestDTO, 10, 0)).thenReturn(loanPage);
+        when(mockLoanService.getLoans(customer, getLoansRequestDTO, 10, 0, true)).thenReturn(loanPage);
 
         Page<LoanDTO> loans = loanFacade.getLoans(customer, getLoansRequestDTO, 10, 0);
 
@@ -187,10 +268,10 @@ class LoanFacadeTest {
 
     @Test
     void getLoansWhenNoLoansFound() {
-        GetLoansRequestDTO getLoansRequestDTO = mock(GetLoansRequestDTO.class);
+        GetLoansRequestDTO getLoansRequestDTO = new GetLoansRequestDTO();
         Customer customer = mock(Customer.class);
 
-        when(mockLoanService.getLoans(customer, getLoansRequestDTO, 10, 0)).thenReturn(Page.empty());
+        when(mockLoanService.getLoans(customer, getLoansRequestDTO, 10, 0, true)).thenReturn(Page.empty());
 
         Page<LoanDTO> loans = loanFacade.getLoans(customer, getLoansRequestDTO, 10, 0);
 
@@ -198,6 +279,135 @@ class LoanFacadeTest {
         assertTrue(loans.getContent().isEmpty());
     }
 
+    @Test
+    void getLoansByCursor() {
+        GetLoansRequestDTO getLoansRequestDTO = new GetLoansRequestDTO();
+        Customer customer = mock(Customer.class);
+        Loan loan = mock(Loan.class);
+        LoanDTO loanDTO = mock(LoanDTO.class);
+
+        when(loan.getId()).thenReturn(42L);
+        doReturn(loanDTO).when(loanMapper).toLoanDTO(eq(loan), any());
+        when(mockLoanService.getLoans(customer, getLoansRequestDTO, 1, ScrollPosition.keyset(), true))
+                .thenReturn(Window.from(List.of(loan), index -> ScrollPosition.keyset(), true));
+
+        LoanCursorPageDTO firstPage = loanFacade.getLoans(customer, getLoansRequestDTO, 1, "");
+
+        assertEquals(List.of(loanDTO), firstPage.getContent());
+        assertNotNull(firstPage.getNextCursor());
+
+        when(mockLoanService.getLoans(customer, getLoansRequestDTO, 1, ScrollPosition.forward(Map.of("id", 42L)), true))
+                .thenReturn(Window.from(Collections.emptyList(), index -> ScrollPosition.keyset(), false));
+
+        LoanCursorPageDTO lastPage = loanFacade.getLoans(customer, getLoansRequestDTO, 1, firstPage.getNextCursor());
+
+        assertTrue(lastPage.getContent().isEmpty());
+        assertNull(lastPage.getNextCursor());
+    }
+
+    @Test
+    void getLoansWithSelectedFields() {
+        Customer customer = mock(Customer.class);
+        GetLoansRequestDTO getLoansRequestDTO = new GetLoansRequestDTO();
+        Loan loan = getLoanFixture(customer);
+
+        getLoansRequestDTO.setFields(Set.of("id", "paid"));
+
+        when(mockLoanService.getLoans(customer, getLoansRequestDTO, 10, 0, false)).thenReturn(new PageImpl<>(List.of(loan)));
+
+        LoanDTO loanDTO = loanFacade.getLoans(customer, getLoansRequestDTO, 10, 0).getContent().get(0);
+
+        assertEquals(1L, loanDTO.getId());
+        assertFalse(loanDTO.getPaid());
+        assertNull(loanDTO.getNumberOfInstallments());
+        assertNull(loanDTO.getInstallments());
+    }
+
+    @Test
+    void getLoansWithEmbeddedInstallments() {
+        Customer customer = mock(Customer.class);
+        GetLoansRequestDTO getLoansRequestDTO = new GetLoansRequestDTO();
+        Loan loan = getLoanFixture(customer);
+
+        getLoansRequestDTO.setFields(Set.of("id"));
+        getLoansRequestDTO.setEmbed(Set.of("installments"));
+
+        when(mockLoanService.getLoans(customer, getLoansRequestDTO, 10, ScrollPosition.keyset(), true))
+                .thenReturn(Window.from(List.of(loan), index -> ScrollPosition.keyset(), false));
+
+        LoanDTO loanDTO = loanFacade.getLoans(customer, getLoansRequestDTO, 10, "").getContent().get(0);
+
+        assertEquals(1L, loanDTO.getId());
+        assertNull(loanDTO.getPaid());
+        assertEquals(6, loanDTO.getInstallments().size());
+    }
+
+    @Test
+    void getLoansWithoutEmbeddedInstallments() {
+        Customer customer = mock(Customer.class);
+        GetLoansRequestDTO getLoansRequestDTO = new GetLoansRequestDTO();
+        Loan loan = getLoanFixture(customer);
+
+        getLoansRequestDTO.setEmbed(Collections.emptySet());
+
+        when(mockLoanService.getLoans(customer, getLoansRequestDTO, 10, 0, false)).thenReturn(new PageImpl<>(List.of(loan)));
+
+        LoanDTO loanDTO = loanFacade.getLoans(customer, getLoansRequestDTO, 10, 0).getContent().get(0);
+
+        assertEquals(1L, loanDTO.getId());
+        assertEquals(6, loanDTO.getNumberOfInstallments());
+        assertFalse(loanDTO.getPaid());
+        assertNull(loanDTO.getInstallments());
+    }
+
+    @Test
+    void getLoansWhenFieldIsUnknown() {
+        GetLoansRequestDTO unknownField = new GetLoansRequestDTO();
+        GetLoansRequestDTO unknownEmbed = new GetLoansRequestDTO();
+
+        unknownField.setFields(Set.of("id", "customer"));
+        unknownEmbed.setEmbed(Set.of("customer"));
+
+        assertThrows(InvalidGetLoansRequestException.class, () -> loanFacade.getLoans(mock(Customer.class), unknownField, 10, 0));
+        assertThrows(InvalidGetLoansRequestException.class, () -> loanFacade.getLoans(mock(Customer.class), unknownEmbed, 10, ""));
+        verifyNoInteractions(mockLoanService);
+    }
+
+    @Test
+    void getLoansByCursorWhenCursorIsInvalid() {
+        assertThrows(InvalidGetLoansRequestException.class, () -> loanFacade.getLoans(mock(Customer.class), new GetLoansRequestDTO(), 10, "not a cursor"));
+        assertThrows(InvalidGetLoansRequestException.class, () -> loanFacade.getLoans(mock(Customer.class), new GetLoansRequestDTO(), 0, ""));
+    }
+
+    @Test
+    void getLoan() {
+        Customer customer = mock(Customer.class);
+        Loan loan = getLoanFixture(customer);
+
+        when(mockLoanService.getLoan(customer, 1L)).thenReturn(loan);
+
+        LoanDTO loanDTO = loanFacade.getLoan(customer, 1L);
+
+        assertEquals(1L, loanDTO.getId());
+        assertEquals(6, loanDTO.getInstallments().size());
+    }
+
+    @Test
+    void getLoanETag() {
+        Customer customer = mock(Customer.class);
+
+        when(mockLoanService.getLoanVersion(customer, 1L)).thenReturn(3L);
+
+        LocaleContextHolder.setLocale(Locale.forLanguageTag("tr-TR"));
+        try {
+            assertEquals("\"1-3-tr-TR\"", loanFacade.getLoanETag(customer, 1L));
+        } finally {
+            LocaleContextHolder.resetLocaleContext();
+        }
+
+        verify(mockLoanService, never()).getInstallments(any(), anyLong());
+    }
+
     @Test
     void getInstallments() {
         Customer customer = mock(Customer.class);
@@ -206,8 +416,8 @@ class LoanFacadeTest {
         LoanInstallmentDTO loanInstallmentDTO1 = mock(LoanInstallmentDTO.class);
         LoanInstallmentDTO loanInstallmentDTO2 = mock(LoanInstallmentDTO.class);
 
-        when(mockModelMapper.map(loanInstallment1, LoanInstallmentDTO.class)).thenReturn(loanInstallmentDTO1);
-        when(mockModelMapper.map(loanInstallment2, LoanInstallmentDTO.class)).thenReturn(loanInstallmentDTO2);
+        doReturn(loanInstallmentDTO1).when(loanMapper).toLoanInstallmentDTO(eq(loanInstallment1), any());
+        doReturn(loanInstallmentDTO2).when(loanMapper).toLoanInstallmentDTO(eq(loanInstallment2), any());
 
         when(mockLoanService.getInstallments(customer, 1L)).thenReturn(Arrays.asList(loanInstallment1, loanInstallment2));
 
@@ -219,6 +429,22 @@ class LoanFacadeTest {
         assertEquals(loanInstallmentDTO2, installments.get(1));
     }
 
+    @Test
+    void getInstallmentsWithSelectedFields() {
+        Customer customer = mock(Customer.class);
+        Loan loan = getLoanFixture(customer);
+
+        when(mockLoanService.getInstallments(customer, 1L)).thenReturn(loan.getInstallments());
+
+        LoanInstallmentDTO installment = loanFacade.getInstallments(customer, 1L, Set.of("dueDate", "amount")).get(0);
+
+        assertEquals("2025-03-01", installment.getDueDate());
+        assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("11")), installment.getAmount());
+        assertNull(installment.getPaid());
+
+        assertThrows(InvalidGetLoansRequestException.class, () -> loanFacade.getInstallments(customer, 1L, Set.of("loan")));
+    }
+
     @Test
     void getInstallmentsWhenNoInstallmentsFound() {
         Customer customer = mock(Customer.class);
@@ -271,7 +497,7 @@ class LoanFacadeTest {
         Loan loan = getLoanFixture(customer);
 
         when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-02-03"));
-        when(mockLoanService.getLoan(customer, 1L)).thenReturn(loan);
+        givenPayableLoan(customer, loan);
 
         PayLoanResponseDTO response = loanFacade.payLoan(customer, 1L, payLoanRequestDTO);
 
@@ -295,15 +521,14 @@ class LoanFacadeTest {
         Loan loan = getLoanFixture(customer);
 
         when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-02-03"));
-        when(mockLoanService.getLoan(customer, 1L)).thenReturn(loan);
+        givenPayableLoan(customer, loan);
 
         PayLoanResponseDTO response = loanFacade.payLoan(customer,1L, payLoanRequestDTO);
 
         assertNotNull(response);
         assertEquals(1, response.getNumberOfInstallmentsPaid());
         assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("10.71")), response.getTotalAmountSpent());
-        verify(customer).setUsedCreditLimit(new BigDecimal("55"));
-        verify(mockCustomerService).updateCustomer(customer);
+        verify(mockCustomerService).releaseCreditLimit(customer, money("11"));
     }
 
     @Test
@@ -319,7 +544,7 @@ class LoanFacadeTest {
         Loan loan = getLoanFixture(customer);
 
         when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-03-11"));
-        when(mockLoanService.getLoan(customer, 1L)).thenReturn(loan);
+        givenPayableLoan(customer, loan);
 
         PayLoanResponseDTO response = loanFacade.payLoan(customer, 1L, payLoanRequestDTO);
 
@@ -343,15 +568,14 @@ class LoanFacadeTest {
         Loan loan = getLoanFixture(customer);
 
         when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-03-11"));
-        when(mockLoanService.getLoan(customer, 1L)).thenReturn(loan);
+        givenPayableLoan(customer, loan);
 
         PayLoanResponseDTO response = loanFacade.payLoan(customer, 1L, payLoanRequestDTO);
 
         assertNotNull(response);
         assertEquals(1, response.getNumberOfInstallmentsPaid());
         assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("11.11")), response.getTotalAmountSpent());
-        verify(customer).setUsedCreditLimit(new BigDecimal("55"));
-        verify(mockCustomerService).updateCustomer(customer);
+        verify(mockCustomerService).releaseCreditLimit(customer, money("11"));
     }
 
     @Test
@@ -367,15 +591,14 @@ class LoanFacadeTest {
         Loan loan = getLoanFixture(customer);
 
         when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-03-01"));
-        when(mockLoanService.getLoan(customer, 1L)).thenReturn(loan);
+        givenPayableLoan(customer, loan);
 
         PayLoanResponseDTO response = loanFacade.payLoan(customer, 1L, payLoanRequestDTO);
 
         assertNotNull(response);
         assertEquals(1, response.getNumberOfInstallmentsPaid());
         assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("11")), response.getTotalAmountSpent());
-        verify(customer).setUsedCreditLimit(new BigDecimal("55"));
-        verify(mockCustomerService).updateCustomer(customer);
+        verify(mockCustomerService).releaseCreditLimit(customer, money("11"));
     }
 
     @Test
@@ -391,15 +614,14 @@ class LoanFacadeTest {
         Loan loan = getLoanFixture(customer);
 
         when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-03-01"));
-        when(mockLoanService.getLoan(customer, 1L)).thenReturn(loan);
+        givenPayableLoan(customer, loan);
 
         PayLoanResponseDTO response = loanFacade.payLoan(customer, 1L, payLoanRequestDTO);
 
         assertNotNull(response);
         assertEquals(2, response.getNumberOfInstallmentsPaid());
         assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("21.66")), response.getTotalAmountSpent());
-        verify(customer).setUsedCreditLimit(new BigDecimal("44"));
-        verify(mockCustomerService).updateCustomer(customer);
+        verify(mockCustomerService).releaseCreditLimit(customer, money("22"));
     }
 
     @Test
@@ -415,15 +637,14 @@ class LoanFacadeTest {
         Loan loan = getLoanFixture(customer);
 
         when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-03-01"));
-        when(mockLoanService.getLoan(customer, 1L)).thenReturn(loan);
+        givenPayableLoan(customer, loan);
 
         PayLoanResponseDTO response = loanFacade.payLoan(customer, 1L, payLoanRequestDTO);
 
         assertNotNull(response);
         assertEquals(3, response.getNumberOfInstallmentsPaid());
         assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("31.99")), response.getTotalAmountSpent());
-        verify(customer).setUsedCreditLimit(new BigDecimal("33"));
-        verify(mockCustomerService).updateCustomer(customer);
+        verify(mockCustomerService).releaseCreditLimit(customer, money("33"));
     }
 
     @Test
@@ -439,15 +660,14 @@ class LoanFacadeTest {
         Loan loan = getLoanFixture(customer);
 
         when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-03-01"));
-        when(mockLoanService.getLoan(customer, 1L)).thenReturn(loan);
+        givenPayableLoan(customer, loan);
 
         PayLoanResponseDTO response = loanFacade.payLoan(customer, 1L, payLoanRequestDTO);
 
         assertNotNull(response);
         assertEquals(3, response.getNumberOfInstallmentsPaid());
         assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("31.99")), response.getTotalAmountSpent());
-        verify(customer).setUsedCreditLimit(new BigDecimal("33"));
-        verify(mockCustomerService).updateCustomer(customer);
+        verify(mockCustomerService).releaseCreditLimit(customer, money("33"));
     }
 
     @Test
@@ -463,15 +683,14 @@ class LoanFacadeTest {
         Loan loan = getLoanFixture(customer);
 
         when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-03-01"));
-        when(mockLoanService.getLoan(customer, 1L)).thenReturn(loan);
+        givenPayableLoan(customer, loan);
 
         PayLoanResponseDTO response = loanFacade.payLoan(customer, 1L, payLoanRequestDTO);
 
         assertNotNull(response);
         assertEquals(3, response.getNumberOfInstallmentsPaid());
         assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("31.99")), response.getTotalAmountSpent());
-        verify(customer).setUsedCreditLimit(new BigDecimal("33"));
-        verify(mockCustomerService).updateCustomer(customer);
+        verify(mockCustomerService).releaseCreditLimit(customer, money("33"));
 
         when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-06-01"));
         when(customer.getUsedCreditLimit()).thenReturn(new BigDecimal("33"));
@@ -481,7 +700,219 @@ class LoanFacadeTest {
         assertNotNull(response2);
         assertEquals(3, response2.getNumberOfInstallmentsPaid());
         assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("32.00")), response2.getTotalAmountSpent());
-        verify(customer).setUsedCreditLimit(BigDecimal.ZERO);
-        verify(mockCustomerService, times(2)).updateCustomer(customer);
+        verify(mockCustomerService, times(2)).releaseCreditLimit(customer, money("33"));
+        assertFalse(response.isLoanPaidCompletely());
+        assertTrue(response2.isLoanPaidCompletely());
+    }
+
+    @Test
+    void payLoanWhenPaidConcurrently() {
+        PayLoanRequestDTO payLoanRequestDTO = new PayLoanRequestDTO();
+        payLoanRequestDTO.setAmount("11");
+
+        Customer customer = mock(Customer.class);
+
+        // Every attempt reads the schedule afresh, as a new transaction would
+        when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-03-01"));
+        when(mockLoanService.getPayableInstallments(eq(customer), eq(1L), any())).thenAnswer(invocationOnMock -> getLoanFixture(customer).getInstallments().subList(0, 3));
+        when(mockLoanService.payInstallments(eq(1L), any()))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Loan.class, 1L))
+                .thenReturn(false);
+
+        PayLoanResponseDTO response = loanFacade.payLoan(customer, 1L, payLoanRequestDTO);
+
+        assertEquals(1, response.getNumberOfInstallmentsPaid());
+        verify(mockLoanService, times(2)).getPayableInstallments(eq(customer), eq(1L), any());
+        verify(mockTransactionManager).rollback(any());
+        verify(mockTransactionManager).commit(any());
+        verify(mockCustomerService).releaseCreditLimit(customer, money("11"));
+    }
+
+    @Test
+    void payLoanWhenConflictsPersist() {
+        PayLoanRequestDTO payLoanRequestDTO = new PayLoanRequestDTO();
+        payLoanRequestDTO.setAmount("11");
+
+        Customer customer = mock(Customer.class);
+
+        when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-03-01"));
+        when(mockLoanService.getPayableInstallments(eq(customer), eq(1L), any())).thenAnswer(invocationOnMock -> getLoanFixture(customer).getInstallments().subList(0, 3));
+        when(mockLoanService.payInstallments(eq(1L), any())).thenThrow(new ObjectOptimisticLockingFailureException(Loan.class, 1L));
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> loanFacade.payLoan(customer, 1L, payLoanRequestDTO));
+        verify(mockTransactionManager, times(2)).rollback(any());
+        verify(mockCustomerService, never()).releaseCreditLimit(any(), any());
+    }
+
+    @Test
+    void payLoanWithSeveralPaymentsInOneTransaction() {
+        Customer customer = mock(Customer.class);
+        Loan loan = getLoanFixture(customer);
+
+        when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-03-01"));
+        givenPayableLoan(customer, loan);
+
+        List<PayLoanResponseDTO> responses = loanFacade.payLoanInTurn(customer, 1L, List.of(money("11"), money("5"), money("22")));
+
+        assertEquals(3, responses.size());
+        assertEquals(1, responses.get(0).getNumberOfInstallmentsPaid());
+        assertEquals(0, responses.get(1).getNumberOfInstallmentsPaid());
+        assertEquals(2, responses.get(2).getNumberOfInstallmentsPaid());
+        assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("20.99")), responses.get(2).getTotalAmountSpent());
+        verify(mockLoanService).getPayableInstallments(eq(customer), eq(1L), any());
+        verify(mockLoanService).payInstallments(eq(1L), argThat(installments -> installments.size() == 3));
+        verify(mockCustomerService).releaseCreditLimit(customer, money("33"));
+        verify(mockTransactionManager).commit(any());
+    }
+
+    @Test
+    void payLoanWithSeveralPaymentsWhenLoanIsPaidOff() {
+        Customer customer = mock(Customer.class);
+        Loan loan = getLoanFixture(customer);
+
+        when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-06-01"));
+        givenPayableLoan(customer, loan);
+
+        List<PayLoanResponseDTO> responses = loanFacade.payLoanInTurn(customer, 1L, List.of(money("40"), money("40"), money("10")));
+
+        assertEquals(3, responses.get(0).getNumberOfInstallmentsPaid());
+        assertFalse(responses.get(0).isLoanPaidCompletely());
+        assertEquals(3, responses.get(1).getNumberOfInstallmentsPaid());
+        assertTrue(responses.get(1).isLoanPaidCompletely());
+        assertEquals(0, responses.get(2).getNumberOfInstallmentsPaid());
+        assertTrue(responses.get(2).isLoanPaidCompletely());
+        verify(mockCustomerService).releaseCreditLimit(customer, money("66"));
+    }
+
+    @Test
+    void quotePayment() {
+        PayLoanRequestDTO payLoanRequestDTO = new PayLoanRequestDTO();
+        payLoanRequestDTO.setAmount("33");
+
+        Customer customer = mock(Customer.class);
+        Loan loan = getLoanFixture(customer);
+
+        when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-03-01"));
+        when(mockLoanService.getInstallments(customer, 1L)).thenReturn(loan.getInstallments());
+
+        PayLoanResponseDTO response = loanFacade.quotePayment(customer, 1L, payLoanRequestDTO);
+
+        assertEquals(3, response.getNumberOfInstallmentsPaid());
+        assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("31.99")), response.getTotalAmountSpent());
+        assertFalse(response.isLoanPaidCompletely());
+        assertTrue(loan.getInstallments().stream().noneMatch(LoanInstallment::isPaid));
+        verify(mockTransactionManager).getTransaction(argThat(TransactionDefinition::isReadOnly));
+        verify(mockLoanService, never()).payInstallments(anyLong(), any());
+        verifyNoInteractions(mockCustomerService);
+    }
+
+    @Test
+    void quotePaymentAgreesWithPayLoan() {
+        PayLoanRequestDTO payLoanRequestDTO = new PayLoanRequestDTO();
+        payLoanRequestDTO.setAmount("100");
+
+        Customer customer = mock(Customer.class);
+        Loan loan = getLoanFixture(customer);
+
+        loan.getInstallments().get(0).setPaid(true);
+
+        when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-06-01"));
+        when(mockLoanService.getInstallments(customer, 1L)).thenReturn(loan.getInstallments());
+        givenPayableLoan(customer, loan);
+
+        PayLoanResponseDTO quote = loanFacade.quotePayment(customer, 1L, payLoanRequestDTO);
+
+        assertEquals(5, quote.getNumberOfInstallmentsPaid());
+        assertTrue(quote.isLoanPaidCompletely());
+        assertEquals(quote, loanFacade.payLoan(customer, 1L, payLoanRequestDTO));
+    }
+
+    @Test
+    void quotePaymentWhenAmountIsInvalid() {
+        PayLoanRequestDTO payLoanRequestDTO = new PayLoanRequestDTO();
+        payLoanRequestDTO.setAmount("-1");
+
+        assertThrows(InvalidPayLoanRequestException.class, () -> loanFacade.quotePayment(mock(Customer.class), 1L, payLoanRequestDTO));
+        verifyNoInteractions(mockLoanService);
+    }
+
+    @Test
+    void payLoans() {
+        PayLoanRequestDTO payLoanRequestDTO = new PayLoanRequestDTO();
+        payLoanRequestDTO.setAmount("33");
+
+        Customer customer = mock(Customer.class);
+        Loan firstLoan = getLoanFixture(customer);
+        Loan secondLoan = getLoanFixture(customer);
+
+        secondLoan.setId(2L);
+        firstLoan.getInstallments().forEach(loanInstallment -> loanInstallment.setLoan(firstLoan));
+        secondLoan.getInstallments().forEach(loanInstallment -> loanInstallment.setLoan(secondLoan));
+
+        when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-03-01"));
+        when(mockLoanService.getPayableInstallments(eq(customer), any(LocalDate.class))).thenAnswer(invocationOnMock -> {
+            LocalDate maxDueDate = invocationOnMock.getArgument(1);
+            List<LoanInstallment> installments = new ArrayList<>(firstLoan.getInstallments());
+
+            installments.addAll(secondLoan.getInstallments());
+
+            return installments.stream()
+                    .filter(loanInstallment -> !loanInstallment.getDueDate().toLocalDate().isAfter(maxDueDate))
+                    .sorted(Comparator.comparing(LoanInstallment::getDueDate))
+                    .toList();
+        });
+        when(mockLoanService.payInstallments(anyCollection())).thenReturn(Set.of());
+
+        PayLoansResponseDTO response = loanFacade.payLoans(customer, payLoanRequestDTO);
+
+        assertEquals(3, response.getNumberOfInstallmentsPaid());
+        assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("32.66")), response.getTotalAmountSpent());
+        assertEquals(2, response.getLoans().size());
+        assertEquals(1L, response.getLoans().get(0).getLoanId());
+        assertEquals(2, response.getLoans().get(0).getNumberOfInstallmentsPaid());
+        assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("21.66")), response.getLoans().get(0).getTotalAmountSpent());
+        assertEquals(2L, response.getLoans().get(1).getLoanId());
+        assertEquals(1, response.getLoans().get(1).getNumberOfInstallmentsPaid());
+        assertFalse(response.getLoans().get(1).isLoanPaidCompletely());
+        assertTrue(secondLoan.getInstallments().get(0).isPaid());
+        assertFalse(secondLoan.getInstallments().get(1).isPaid());
+        verify(mockLoanService).payInstallments(argThat(installments -> installments.size() == 3));
+        verify(mockCustomerService).releaseCreditLimit(customer, money("33"));
+        verify(mockTransactionManager).commit(any());
+    }
+
+    @Test
+    void payLoansWhenNothingIsPayable() {
+        PayLoanRequestDTO payLoanRequestDTO = new PayLoanRequestDTO();
+        payLoanRequestDTO.setAmount("5");
+
+        Customer customer = mock(Customer.class);
+
+        when(mockTimeService.localDateNow()).thenReturn(LocalDate.parse("2025-03-01"));
+        when(mockLoanService.getPayableInstallments(eq(customer), any(LocalDate.class))).thenReturn(getLoanFixture(customer).getInstallments().subList(0, 3));
+
+        PayLoansResponseDTO response = loanFacade.payLoans(customer, payLoanRequestDTO);
+
+        assertEquals(0, response.getNumberOfInstallmentsPaid());
+        assertTrue(response.getLoans().isEmpty());
+        verify(mockLoanService, never()).payInstallments(anyCollection());
+        verifyNoInteractions(mockCustomerService);
+    }
+
+    private static Money money(String amount) {
+        return Money.of(new BigDecimal(amount), 2);
+    }
+
+    // Stubs the targeted payment queries the way the repositories answer them for the given loan
+    private void givenPayableLoan(Customer customer, Loan loan) {
+        when(mockLoanService.getPayableInstallments(eq(customer), eq(1L), any())).thenAnswer(invocationOnMock -> {
+            LocalDate maxDueDate = invocationOnMock.getArgument(2);
+
+            return loan.getInstallments().stream()
+                    .filter(loanInstallment -> !loanInstallment.isPaid() && !loanInstallment.getDueDate().toLocalDate().isAfter(maxDueDate))
+                    .toList();
+        });
+        when(mockLoanService.payInstallments(eq(1L), any()))
+                .thenAnswer(invocationOnMock -> loan.getInstallments().stream().allMatch(LoanInstallment::isPaid));
     }
 }
\ No newline at end of file
@@ -0,0 +1,221 @@
+package com.tanermansur.loan.facade;
+
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.exception.LoanNotFoundException;
+import com.tanermansur.loan.exception.QueueFullException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+class WriteLaneExecutorTest {
+    @InjectMocks
+    private WriteLaneExecutor writeLaneExecutor;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    // Customers 1 and 3 share the second lane, customer 2 has the first one
+    private final Customer firstCustomer = customer(1L);
+    private final Customer secondCustomer = customer(2L);
+    private final Customer thirdCustomer = customer(3L);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(writeLaneExecutor, "enabled", true);
+        ReflectionTestUtils.setField(writeLaneExecutor, "laneCount", 2);
+        ReflectionTestUtils.setField(writeLaneExecutor, "queueCapacity", 1);
+        ReflectionTestUtils.setField(writeLaneExecutor, "retryAfter", Duration.ofSeconds(1));
+        writeLaneExecutor.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        writeLaneExecutor.destroy();
+    }
+
+    @Test
+    void executeWritesOfOneCustomerInOrder() throws Exception {
+        CountDownLatch firstWriteReleased = new CountDownLatch(1);
+        List<String> writes = Collections.synchronizedList(new ArrayList<>());
+
+        Future<String> firstWrite = callers.submit(() -> writeLaneExecutor.execute(firstCustomer, () -> {
+            await(firstWriteReleased);
+            writes.add("first");
+
+            return "first";
+        }));
+        awaitQueueDepth("1", 0);
+
+        Future<String> secondWrite = callers.submit(() -> writeLaneExecutor.execute(thirdCustomer, () -> {
+            writes.add("second");
+
+            return "second";
+        }));
+        awaitQueueDepth("1", 1);
+
+        firstWriteReleased.countDown();
+
+        assertEquals("first", firstWrite.get(5, TimeUnit.SECONDS));
+        assertEquals("second", secondWrite.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("first", "second"), writes);
+    }
+
+    @Test
+    void executeWritesOfDifferentLanesInParallel() throws Exception {
+        CountDownLatch firstWriteReleased = new CountDownLatch(1);
+
+        Future<String> firstWrite = callers.submit(() -> writeLaneExecutor.execute(firstCustomer, () -> {
+            await(firstWriteReleased);
+
+            return "first";
+        }));
+
+        assertEquals("second", writeLaneExecutor.execute(secondCustomer, () -> "second"));
+        assertFalse(firstWrite.isDone());
+
+        firstWriteReleased.countDown();
+
+        assertEquals("first", firstWrite.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void executeWhenLaneIsFull() throws Exception {
+        CountDownLatch firstWriteReleased = new CountDownLatch(1);
+
+        Future<String> firstWrite = callers.submit(() -> writeLaneExecutor.execute(firstCustomer, () -> {
+            await(firstWriteReleased);
+
+            return "first";
+        }));
+        awaitQueueDepth("1", 0);
+
+        Future<String> secondWrite = callers.submit(() -> writeLaneExecutor.execute(firstCustomer, () -> "second"));
+        awaitQueueDepth("1", 1);
+
+        QueueFullException exception = assertThrows(QueueFullException.class, () -> writeLaneExecutor.execute(thirdCustomer, () -> "third"));
+
+        assertEquals(Duration.ofSeconds(1), exception.getRetryAfter());
+        assertEquals("second", writeLaneExecutor.execute(secondCustomer, () -> "second"));
+
+        firstWriteReleased.countDown();
+
+        assertEquals("first", firstWrite.get(5, TimeUnit.SECONDS));
+        assertEquals("second", secondWrite.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void executeWhenWriteFails() {
+        assertThrows(LoanNotFoundException.class, () -> writeLaneExecutor.execute(firstCustomer, () -> {
+            throw new LoanNotFoundException(1L);
+        }));
+        assertEquals("first", writeLaneExecutor.execute(firstCustomer, () -> "first"));
+    }
+
+    @Test
+    void executeWhenCallerIsInterrupted() throws Exception {
+        CountDownLatch writeReleased = new CountDownLatch(1);
+        AtomicReference<Thread> caller = new AtomicReference<>();
+
+        Future<Boolean> write = callers.submit(() -> {
+            caller.set(Thread.currentThread());
+
+            String result = writeLaneExecutor.execute(firstCustomer, () -> {
+                await(writeReleased);
+
+                return "first";
+            });
+
+            return result.equals("first") && Thread.currentThread().isInterrupted();
+        });
+        awaitQueueDepth("1", 0);
+
+        caller.get().interrupt();
+
+        // The caller keeps waiting for its queued write and only then sees its interrupt
+        Thread.sleep(50);
+        assertFalse(write.isDone());
+
+        writeReleased.countDown();
+
+        assertTrue(write.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void executeWithLocaleOfCaller() {
+        LocaleContextHolder.setLocale(Locale.GERMANY);
+        try {
+            assertEquals(Locale.GERMANY, writeLaneExecutor.execute(firstCustomer, LocaleContextHolder::getLocale));
+        } finally {
+            LocaleContextHolder.resetLocaleContext();
+        }
+    }
+
+    @Test
+    void executeRecordsLatencyPerLane() {
+        writeLaneExecutor.execute(firstCustomer, () -> "first");
+        writeLaneExecutor.execute(thirdCustomer, () -> "third");
+
+        assertEquals(2, meterRegistry.get("loan.write-lane.wait").tag("lane", "1").timer().count());
+        assertEquals(2, meterRegistry.get("loan.write-lane.execution").tag("lane", "1").timer().count());
+        assertEquals(0, meterRegistry.get("loan.write-lane.execution").tag("lane", "0").timer().count());
+    }
+
+    @Test
+    void executeInPlaceWhenDisabled() {
+        WriteLaneExecutor disabledWriteLaneExecutor = new WriteLaneExecutor(meterRegistry);
+        disabledWriteLaneExecutor.init();
+
+        Thread caller = Thread.currentThread();
+
+        assertSame(caller, disabledWriteLaneExecutor.execute(firstCustomer, Thread::currentThread));
+    }
+
+    // Waits for the lane to have picked its first write and queued the given number of writes behind it
+    private void awaitQueueDepth(String lane, int depth) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (meterRegistry.get("loan.write-lane.queue.depth").tag("lane", lane).gauge().value() != depth
+                || meterRegistry.get("loan.write-lane.wait").tag("lane", lane).timer().count() == 0) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Customer customer(long id) {
+        Customer customer = new Customer();
+
+        customer.setId(id);
+
+        return customer;
+    }
+}
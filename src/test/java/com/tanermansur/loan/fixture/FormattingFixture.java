@@ -0,0 +1,21 @@
+package com.tanermansur.loan.fixture;
+
+import com.tanermansur.loan.service.FormattingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class FormattingFixture {
+    public static FormattingService getFormattingServiceFixture() {
+        return getFormattingServiceFixture("", 0);
+    }
+
+    public static FormattingService getFormattingServiceFixture(String currencyCode, long amountCacheMaximumSize) {
+        FormattingService formattingService = new FormattingService(new SimpleMeterRegistry());
+
+        ReflectionTestUtils.setField(formattingService, "currencyCode", currencyCode);
+        ReflectionTestUtils.setField(formattingService, "amountCacheMaximumSize", amountCacheMaximumSize);
+        formattingService.init();
+
+        return formattingService;
+    }
+}
@@ -0,0 +1,85 @@
+package com.tanermansur.loan.mapper;
+
+import com.tanermansur.loan.dto.LoanDTO;
+import com.tanermansur.loan.dto.LoanInstallmentDTO;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.entity.Loan;
+import com.tanermansur.loan.entity.LoanInstallment;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.text.NumberFormat;
+import java.util.Set;
+
+import static com.tanermansur.loan.fixture.FormattingFixture.getFormattingServiceFixture;
+import static com.tanermansur.loan.fixture.LoanFixture.getLoanFixture;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoanMapperTest {
+    private final LoanMapper loanMapper = new LoanMapper(getFormattingServiceFixture());
+
+    @Test
+    void toLoanDTO() {
+        Loan loan = getLoanFixture(new Customer());
+        LoanInstallment paidInstallment = loan.getInstallments().get(0);
+
+        paidInstallment.setPaid(true);
+        paidInstallment.setPaidAmount(new BigDecimal("10.71"));
+        paidInstallment.setPaymentDate(Date.valueOf("2025-02-03"));
+
+        LoanDTO loanDTO = loanMapper.toLoanDTO(loan);
+
+        assertEquals(1L, loanDTO.getId());
+        assertEquals(6, loanDTO.getNumberOfInstallments());
+        assertFalse(loanDTO.getPaid());
+        assertEquals(6, loanDTO.getInstallments().size());
+
+        LoanInstallmentDTO paidInstallmentDTO = loanDTO.getInstallments().get(0);
+
+        assertEquals("2025-03-01", paidInstallmentDTO.getDueDate());
+        assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("11")), paidInstallmentDTO.getAmount());
+        assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("10.71")), paidInstallmentDTO.getPaidAmount());
+        assertEquals("2025-02-03", paidInstallmentDTO.getPaymentDate());
+        assertTrue(paidInstallmentDTO.getPaid());
+
+        LoanInstallmentDTO unpaidInstallmentDTO = loanDTO.getInstallments().get(1);
+
+        assertEquals("2025-04-01", unpaidInstallmentDTO.getDueDate());
+        assertNull(unpaidInstallmentDTO.getPaidAmount());
+        assertNull(unpaidInstallmentDTO.getPaymentDate());
+        assertFalse(unpaidInstallmentDTO.getPaid());
+    }
+
+    @Test
+    void toLoanDTOWithSelectedFields() {
+        Loan loan = getLoanFixture(new Customer());
+
+        // Installments that were not loaded must not be touched
+        loan.setInstallments(null);
+
+        LoanDTO loanDTO = loanMapper.toLoanDTO(loan, FieldSelection.of(Set.of("id", "numberOfInstallments")));
+
+        assertEquals(1L, loanDTO.getId());
+        assertEquals(6, loanDTO.getNumberOfInstallments());
+        assertNull(loanDTO.getPaid());
+        assertNull(loanDTO.getInstallments());
+    }
+
+    @Test
+    void toLoanInstallmentDTOWithSelectedFields() {
+        LoanInstallment installment = getLoanFixture(new Customer()).getInstallments().get(0);
+
+        installment.setPaid(true);
+        installment.setPaidAmount(new BigDecimal("10.71"));
+        installment.setPaymentDate(Date.valueOf("2025-02-03"));
+
+        LoanInstallmentDTO installmentDTO = loanMapper.toLoanInstallmentDTO(installment, FieldSelection.of(Set.of("paid", "paymentDate")));
+
+        assertTrue(installmentDTO.getPaid());
+        assertEquals("2025-02-03", installmentDTO.getPaymentDate());
+        assertNull(installmentDTO.getDueDate());
+        assertNull(installmentDTO.getAmount());
+        assertNull(installmentDTO.getPaidAmount());
+    }
+}
@@ -0,0 +1,104 @@
+package com.tanermansur.loan.money;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+    private static final int[] NUMBER_OF_INSTALLMENTS = {6, 9, 12, 24};
+
+    @Test
+    void of() {
+        assertEquals(new Money(1050, 2), Money.of(new BigDecimal("10.5"), 2));
+        assertEquals(new BigDecimal("10.50"), Money.of(new BigDecimal("10.5"), 2).toBigDecimal());
+    }
+
+    @Test
+    void ofWhenAmountHasFractionsOfMinorUnit() {
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("10.005"), 2));
+        assertEquals(new Money(1000, 2), Money.of(new BigDecimal("10.009"), 2, RoundingMode.DOWN));
+    }
+
+    @Test
+    void plusWhenFractionDigitsDiffer() {
+        assertThrows(IllegalArgumentException.class, () -> Money.zero(2).plus(Money.zero(0)));
+    }
+
+    @Test
+    void timesWhenResultOverflows() {
+        assertThrows(ArithmeticException.class, () -> new Money(Long.MAX_VALUE / 2, 2).times(3));
+    }
+
+    @Test
+    void rateOf() {
+        assertEquals(new Rate(1, 1), Rate.of(new BigDecimal("0.10")));
+        assertEquals(new Rate(100, 0), Rate.of(new BigDecimal("1E+2")));
+        assertEquals(new Rate(11, 1), Rate.ONE.plus(Rate.of(new BigDecimal("0.1"))));
+        assertThrows(ArithmeticException.class, () -> Rate.of(new BigDecimal("1E-19")));
+    }
+
+    @Test
+    void divideMatchesBigDecimal() {
+        for (RoundingMode roundingMode : RoundingMode.values()) {
+            if (roundingMode == RoundingMode.UNNECESSARY) {
+                continue;
+            }
+
+            for (long dividend = -25; dividend <= 25; dividend++) {
+                for (long divisor : new long[]{1, 2, 3, 4, 7, 10, -3, -4}) {
+                    long expected = BigDecimal.valueOf(dividend).divide(BigDecimal.valueOf(divisor), 0, roundingMode).longValueExact();
+
+                    assertEquals(expected, Money.divide(dividend, divisor, roundingMode), dividend + " / " + divisor + " " + roundingMode);
+                }
+            }
+        }
+    }
+
+    @Test
+    void installmentAmountsMatchBigDecimalCalculation() {
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            BigDecimal loanAmount = BigDecimal.valueOf(1 + random.nextInt(100_000_000), 2);
+            BigDecimal interestRate = BigDecimal.valueOf(100 + random.nextInt(401), 3);
+            int numberOfInstallments = NUMBER_OF_INSTALLMENTS[random.nextInt(NUMBER_OF_INSTALLMENTS.length)];
+
+            // The calculation before minor units, rounded to the stored scale the way the database column does
+            BigDecimal amountToBePaidBack = loanAmount.add(loanAmount.multiply(interestRate));
+            BigDecimal singleInstallmentAmount = amountToBePaidBack.divide(BigDecimal.valueOf(numberOfInstallments), 2, RoundingMode.HALF_UP);
+            BigDecimal residueLoanAmount = amountToBePaidBack.subtract(singleInstallmentAmount.multiply(BigDecimal.valueOf(numberOfInstallments)));
+
+            Rate totalRate = Rate.ONE.plus(Rate.of(interestRate));
+            Money money = Money.of(loanAmount, 2);
+            Money total = money.multiply(totalRate, RoundingMode.HALF_UP);
+            Money single = money.multiplyAndDivide(totalRate, numberOfInstallments, RoundingMode.HALF_UP);
+            Money residue = total.minus(single.times(numberOfInstallments));
+
+            String input = loanAmount + " at " + interestRate + " in " + numberOfInstallments;
+            assertEquals(amountToBePaidBack.setScale(2, RoundingMode.HALF_UP), total.toBigDecimal(), input);
+            assertEquals(singleInstallmentAmount, single.toBigDecimal(), input);
+            assertEquals(singleInstallmentAmount.add(residueLoanAmount).setScale(2, RoundingMode.HALF_UP), single.plus(residue).toBigDecimal(), input);
+        }
+    }
+
+    @Test
+    void discountAndPenaltyMatchBigDecimalCalculation() {
+        BigDecimal coefficient = new BigDecimal("0.001");
+        Rate coefficientRate = Rate.of(coefficient);
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(10_000_000), 2);
+            long days = random.nextInt(1_500) - 62;
+
+            BigDecimal expected = amount.add(amount.multiply(coefficient.multiply(BigDecimal.valueOf(days)))).setScale(2, RoundingMode.HALF_UP);
+            Money actual = Money.of(amount, 2).multiply(Rate.ONE.plus(coefficientRate.times(days)), RoundingMode.HALF_UP);
+
+            assertEquals(expected, actual.toBigDecimal(), amount + " after " + days + " days");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.tanermansur.loan.payment;
+
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.entity.LoanInstallment;
+import com.tanermansur.loan.money.Money;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static com.tanermansur.loan.fixture.LoanFixture.getLoanFixture;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentAllocatorTest {
+    private final List<LoanInstallment> installments = getLoanFixture(new Customer()).getInstallments();
+
+    @Test
+    void maxDueDate() {
+        assertEquals(LocalDate.parse("2025-04-01"), PaymentAllocator.maxDueDate(LocalDate.parse("2025-02-03")));
+        assertEquals(LocalDate.parse("2025-04-01"), PaymentAllocator.maxDueDate(LocalDate.parse("2025-02-28")));
+    }
+
+    @Test
+    void allocateWithDiscount() {
+        PaymentAllocation allocation = PaymentAllocator.allocate(installments, money("11"), LocalDate.parse("2025-02-03"));
+
+        assertEquals(1, allocation.numberOfInstallmentsPaid());
+        assertEquals(money("10.71"), allocation.installmentPayments().get(0).paidAmount());
+        assertEquals(money("10.71"), allocation.totalAmountSpent());
+        assertEquals(money("11"), allocation.totalAmountCovered());
+    }
+
+    @Test
+    void allocateWithPenalty() {
+        assertEquals(0, PaymentAllocator.allocate(installments, money("11"), LocalDate.parse("2025-03-11")).numberOfInstallmentsPaid());
+
+        PaymentAllocation allocation = PaymentAllocator.allocate(installments, money("11.11"), LocalDate.parse("2025-03-11"));
+
+        assertEquals(1, allocation.numberOfInstallmentsPaid());
+        assertEquals(money("11.11"), allocation.totalAmountSpent());
+    }
+
+    @Test
+    void allocateStopsAtMaxDueDate() {
+        PaymentAllocation allocation = PaymentAllocator.allocate(installments, money("1000"), LocalDate.parse("2025-03-01"));
+
+        assertEquals(3, allocation.numberOfInstallmentsPaid());
+        assertEquals(money("31.99"), allocation.totalAmountSpent());
+        assertEquals(money("33"), allocation.totalAmountCovered());
+        assertEquals(installments.subList(0, 3), allocation.installmentPayments().stream().map(PaymentAllocation.InstallmentPayment::installment).toList());
+    }
+
+    @Test
+    void allocateLeavesInstallmentsUntouched() {
+        PaymentAllocator.allocate(installments, money("1000"), LocalDate.parse("2025-08-01"));
+
+        for (LoanInstallment installment : installments) {
+            assertFalse(installment.isPaid());
+            assertNull(installment.getPaidAmount());
+            assertNull(installment.getPaymentDate());
+        }
+    }
+
+    private static Money money(String amount) {
+        return Money.of(new BigDecimal(amount), 2);
+    }
+}
@@ -0,0 +1,142 @@
+package com.tanermansur.loan.repository;
+
+import com.tanermansur.loan.dto.GetLoansRequestDTO;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.entity.Loan;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+class LoanSpecificationsTest {
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private Customer customer;
+
+    @BeforeEach
+    void setUp() {
+        customer = newCustomer("filtered");
+        Customer otherCustomer = newCustomer("other");
+
+        newLoan(customer, 6, false);
+        newLoan(customer, 6, true);
+        newLoan(customer, 12, false);
+        newLoan(customer, 24, true);
+        newLoan(otherCustomer, 6, false);
+    }
+
+    @Test
+    void matchingWithoutFilters() {
+        assertEquals(4, findLoans(null, null).getTotalElements());
+    }
+
+    @Test
+    void matchingWithPaidFilter() {
+        Page<Loan> loans = findLoans(null, true);
+
+        assertEquals(2, loans.getTotalElements());
+        assertTrue(loans.stream().allMatch(Loan::isPaid));
+    }
+
+    @Test
+    void matchingWithNumberOfInstallmentsFilter() {
+        Page<Loan> loans = findLoans(6, null);
+
+        assertEquals(2, loans.getTotalElements());
+        assertTrue(loans.stream().allMatch(loan -> loan.getNumberOfInstallments() == 6));
+    }
+
+    @Test
+    void matchingWithBothFilters() {
+        Page<Loan> loans = findLoans(6, false);
+
+        assertEquals(1, loans.getTotalElements());
+        assertEquals(customer.getId(), loans.getContent().get(0).getCustomer().getId());
+    }
+
+    @Test
+    void matchingScrolledByKeyset() {
+        GetLoansRequestDTO request = new GetLoansRequestDTO();
+        List<Long> loanIds = new ArrayList<>();
+
+        Window<Loan> window = scroll(request, ScrollPosition.keyset());
+        loanIds.addAll(window.map(Loan::getId).getContent());
+
+        assertTrue(window.hasNext());
+
+        window = scroll(request, ScrollPosition.forward(Map.of("id", loanIds.get(loanIds.size() - 1))));
+        loanIds.addAll(window.map(Loan::getId).getContent());
+
+        assertFalse(window.hasNext());
+        assertEquals(4, loanIds.size());
+        assertEquals(loanIds.stream().sorted().toList(), loanIds);
+    }
+
+    @Test
+    void filteredQueryUsesCompositeIndex() {
+        String plan = String.valueOf(entityManager.getEntityManager()
+                .createNativeQuery("explain select id from loan where customer_id = 1 and paid = false and number_of_installments = 6")
+                .getSingleResult());
+
+        assertTrue(plan.toUpperCase().contains("IDX_LOAN_CUSTOMER_PAID_INSTALLMENTS"), plan);
+    }
+
+    private Page<Loan> findLoans(Integer numberOfInstallments, Boolean isPaid) {
+        GetLoansRequestDTO request = new GetLoansRequestDTO();
+
+        request.setNumberOfInstallments(numberOfInstallments);
+        request.setIsPaid(isPaid);
+
+        return loanRepository.findAll(LoanSpecifications.matching(customer.getId(), request), Pageable.ofSize(10));
+    }
+
+    private Window<Loan> scroll(GetLoansRequestDTO request, KeysetScrollPosition position) {
+        return loanRepository.findBy(LoanSpecifications.matching(customer.getId(), request),
+                query -> query.sortBy(Sort.by("id")).limit(3).scroll(position));
+    }
+
+    private Customer newCustomer(String name) {
+        Customer customer = new Customer();
+
+        customer.setName(name);
+        customer.setSurname("customer");
+        customer.setCreditLimit(new BigDecimal("1000"));
+
+        return entityManager.persist(customer);
+    }
+
+    private void newLoan(Customer customer, int numberOfInstallments, boolean paid) {
+        Loan loan = new Loan();
+
+        loan.setCustomer(customer);
+        loan.setLoanAmount(BigDecimal.TEN);
+        loan.setNumberOfInstallments(numberOfInstallments);
+        loan.setPaid(paid);
+        loan.setCreateDate(Timestamp.from(Instant.parse("2025-02-03T00:00:00.000Z")));
+
+        entityManager.persist(loan);
+    }
+}
@@ -0,0 +1,85 @@
+package com.tanermansur.loan.service;
+
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.exception.InsufficientCustomerLimitException;
+import com.tanermansur.loan.money.Money;
+import com.tanermansur.loan.repository.CustomerRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Slf4j
+@SpringBootTest
+@ActiveProfiles("test")
+class CustomerServiceContentionTest {
+    private static final int THREADS = 32;
+    private static final int ATTEMPTS_PER_THREAD = 50;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Test
+    void reserveCreditLimitWhenManyThreadsHitOneCustomer() throws Exception {
+        Customer customer = new Customer();
+
+        customer.setName("contended");
+        customer.setSurname("customer");
+        customer.setCreditLimit(new BigDecimal("1000"));
+
+        Customer savedCustomer = customerRepository.save(customer);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger reservations = new AtomicInteger();
+        AtomicInteger rejections = new AtomicInteger();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executorService.submit(() -> {
+                start.await();
+
+                for (int j = 0; j < ATTEMPTS_PER_THREAD; j++) {
+                    try {
+                        customerService.reserveCreditLimit(savedCustomer, Money.of(BigDecimal.TEN, 2), Money.of(BigDecimal.TEN, 2));
+
+                        reservations.incrementAndGet();
+                    } catch (InsufficientCustomerLimitException e) {
+                        rejections.incrementAndGet();
+                    }
+                }
+
+                return null;
+            }));
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        executorService.shutdown();
+
+        log.info("{} reservation attempts from {} threads on one customer took {} ms ({} attempts/s)",
+                THREADS * ATTEMPTS_PER_THREAD, THREADS, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                THREADS * ATTEMPTS_PER_THREAD * TimeUnit.SECONDS.toNanos(1) / elapsedNanos);
+
+        assertEquals(100, reservations.get());
+        assertEquals(THREADS * ATTEMPTS_PER_THREAD - 100, rejections.get());
+        assertEquals(0, new BigDecimal("1000").compareTo(customerRepository.findById(savedCustomer.getId()).orElseThrow().getUsedCreditLimit()));
+    }
+}
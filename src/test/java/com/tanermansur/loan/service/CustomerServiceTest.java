@@ -3,17 +3,26 @@ package com.tanermansur.loan.service;
 import com.tanermansur.loan.entity.Customer;
 import com.tanermansur.loan.exception.CustomerNotFoundException;
 import com.tanermansur.loan.exception.InsufficientCustomerLimitException;
+import com.tanermansur.loan.money.Money;
 import com.tanermansur.loan.repository.CustomerRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
 
+import static com.tanermansur.loan.fixture.FormattingFixture.getFormattingServiceFixture;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -25,19 +34,58 @@ class CustomerServiceTest {
     @Mock
     private CustomerRepository mockCustomerRepository;
 
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private FormattingService formattingService = getFormattingServiceFixture();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(customerService, "principalCacheMaximumSize", 10L);
+        ReflectionTestUtils.setField(customerService, "principalCacheTimeToLive", Duration.ofMinutes(1));
+
+        customerService.init();
+    }
+
     @Test
-    void checkInsufficientCustomerLimit() {
-        Customer customer = mock(Customer.class);
+    void reserveCreditLimit() {
+        Customer customer = new Customer();
 
-        when(customer.getCreditLimit()).thenReturn(new BigDecimal("100"));
+        customer.setId(1L);
+        customer.setName("first");
+        customer.setSurname("customer");
 
-        assertDoesNotThrow(() -> customerService.checkInsufficientCustomerLimit(customer, new BigDecimal("10")));
-        assertThrows(InsufficientCustomerLimitException.class, () -> customerService.checkInsufficientCustomerLimit(customer, new BigDecimal("101")));
+        when(mockCustomerRepository.reserveCreditLimit(1L, new BigDecimal("10.00"), new BigDecimal("11.00"))).thenReturn(1);
 
-        when(customer.getUsedCreditLimit()).thenReturn(new BigDecimal("10"));
+        assertDoesNotThrow(() -> customerService.reserveCreditLimit(customer, money("10"), money("11")));
+    }
 
-        assertDoesNotThrow(() -> customerService.checkInsufficientCustomerLimit(customer, new BigDecimal("90")));
-        assertThrows(InsufficientCustomerLimitException.class, () -> customerService.checkInsufficientCustomerLimit(customer, new BigDecimal("91")));
+    @Test
+    void reserveCreditLimitWhenLimitIsInsufficient() {
+        Customer customer = new Customer();
+
+        customer.setId(1L);
+        customer.setName("first");
+        customer.setSurname("customer");
+        customer.setCreditLimit(new BigDecimal("100"));
+
+        when(mockCustomerRepository.reserveCreditLimit(1L, new BigDecimal("101.00"), new BigDecimal("111.10"))).thenReturn(0);
+
+        assertThrows(InsufficientCustomerLimitException.class, () -> customerService.reserveCreditLimit(customer, money("101"), money("111.1")));
+    }
+
+    @Test
+    void releaseCreditLimit() {
+        Customer customer = new Customer();
+
+        customer.setId(1L);
+        customer.setName("first");
+        customer.setSurname("customer");
+
+        customerService.releaseCreditLimit(customer, money("11"));
+
+        verify(mockCustomerRepository).releaseCreditLimit(1L, new BigDecimal("11.00"));
     }
 
     @Test
@@ -59,6 +107,7 @@ class CustomerServiceTest {
     void loadUserByUsernameWhenUserIsCustomer() {
         Customer customer = new Customer();
 
+        customer.setId(1L);
         customer.setName("first");
         customer.setSurname("customer");
 
@@ -67,7 +116,8 @@ class CustomerServiceTest {
 
         UserDetails userDetails = customerService.loadUserByUsername("first.customer");
 
-        assertEquals(customer, userDetails);
+        assertInstanceOf(Customer.class, userDetails);
+        assertEquals(customer.getId(), ((Customer) userDetails).getId());
         assertEquals("first.customer", userDetails.getUsername());
         assertEquals(1, userDetails.getAuthorities().size());
         assertEquals("ROLE_USER", userDetails.getAuthorities().iterator().next().getAuthority());
@@ -88,12 +138,115 @@ class CustomerServiceTest {
         assertThrows(CustomerNotFoundException.class, () -> customerService.loadUserByUsername("unknown.user"));
     }
 
+    @Test
+    void loadUserByUsernameWhenCustomerIsCached() {
+        Customer customer = new Customer();
+
+        customer.setName("first");
+        customer.setSurname("customer");
+        customer.setCreditLimit(new BigDecimal("100"));
+
+        when(mockCustomerRepository.findCustomerByNameAndSurname("first", "customer"))
+                .thenReturn(Optional.of(customer));
+
+        Customer first = (Customer) customerService.loadUserByUsername("first.customer");
+
+        first.setUsedCreditLimit(new BigDecimal("10"));
+
+        Customer second = (Customer) customerService.loadUserByUsername("first.customer");
+
+        assertNotSame(first, second);
+        assertNull(second.getUsedCreditLimit());
+        verify(mockCustomerRepository, times(1)).findCustomerByNameAndSurname("first", "customer");
+    }
+
     @Test
     void updateCustomer() {
         Customer customer = mock(Customer.class);
 
+        when(customer.getUsername()).thenReturn("first.customer");
+
         customerService.updateCustomer(customer);
 
         verify(mockCustomerRepository).save(customer);
     }
-}
\ No newline at end of file
+
+    @Test
+    void updateCustomerEvictsCachedPrincipal() {
+        Customer customer = new Customer();
+
+        customer.setName("first");
+        customer.setSurname("customer");
+
+        when(mockCustomerRepository.findCustomerByNameAndSurname("first", "customer"))
+                .thenReturn(Optional.of(customer));
+
+        Customer principal = (Customer) customerService.loadUserByUsername("first.customer");
+
+        principal.setUsedCreditLimit(new BigDecimal("10"));
+
+        customerService.updateCustomer(principal);
+        customerService.loadUserByUsername("first.customer");
+
+        verify(mockCustomerRepository, times(2)).findCustomerByNameAndSurname("first", "customer");
+    }
+
+    @Test
+    void loadUserByClaimsWhenUserIsAdmin() {
+        UserDetails userDetails = customerService.loadUserByClaims("admin", null, List.of("ROLE_ADMIN"));
+
+        assertEquals("admin", userDetails.getUsername());
+        assertEquals("ROLE_ADMIN", userDetails.getAuthorities().iterator().next().getAuthority());
+    }
+
+    @Test
+    void loadUserByClaimsWhenUserIsCustomer() {
+        UserDetails userDetails = customerService.loadUserByClaims("first.customer", 1L, List.of("ROLE_USER"));
+
+        assertInstanceOf(Customer.class, userDetails);
+        assertEquals(1L, ((Customer) userDetails).getId());
+        assertEquals("first.customer", userDetails.getUsername());
+        assertEquals("ROLE_USER", userDetails.getAuthorities().iterator().next().getAuthority());
+        verifyNoInteractions(mockCustomerRepository);
+    }
+
+    @Test
+    void loadUserByClaimsWhenCustomerIdIsOmitted() {
+        assertThrows(CustomerNotFoundException.class, () -> customerService.loadUserByClaims("first.customer", null, List.of("ROLE_USER")));
+    }
+
+    @Test
+    void loadCustomerWhenLimitsAreLoaded() {
+        Customer customer = new Customer();
+
+        customer.setCreditLimit(new BigDecimal("100"));
+
+        assertSame(customer, customerService.loadCustomer(customer));
+        verifyNoInteractions(mockCustomerRepository);
+    }
+
+    @Test
+    void loadCustomerWhenLimitsAreNotLoaded() {
+        Customer principal = new Customer();
+        Customer customer = new Customer();
+
+        principal.setId(1L);
+
+        when(mockCustomerRepository.findById(1L)).thenReturn(Optional.of(customer));
+
+        assertSame(customer, customerService.loadCustomer(principal));
+    }
+
+    @Test
+    void loadCustomerWhenCustomerNotFound() {
+        Customer principal = new Customer();
+
+        principal.setId(1L);
+
+        assertThrows(CustomerNotFoundException.class, () -> customerService.loadCustomer(principal));
+    }
+
+    private static Money money(String amount) {
+        return Money.of(new BigDecimal(amount), 2);
+    }
+}
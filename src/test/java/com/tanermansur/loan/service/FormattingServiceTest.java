@@ -0,0 +1,114 @@
+package com.tanermansur.loan.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.i18n.LocaleContextHolder;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+
+import static com.tanermansur.loan.fixture.FormattingFixture.getFormattingServiceFixture;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FormattingServiceTest {
+    private static final Locale TURKISH = new Locale("tr", "TR");
+
+    @AfterEach
+    void tearDown() {
+        LocaleContextHolder.resetLocaleContext();
+    }
+
+    @Test
+    void formatAmountInDefaultLocale() {
+        FormattingService formattingService = getFormattingServiceFixture();
+
+        assertEquals(NumberFormat.getCurrencyInstance().format(new BigDecimal("1234.5")), formattingService.formatAmount(new BigDecimal("1234.5")));
+        assertEquals(NumberFormat.getCurrencyInstance().getCurrency().getDefaultFractionDigits(), formattingService.getCurrencyFractionDigits());
+    }
+
+    @Test
+    void formatAmountInRequestLocaleKeepsServiceCurrency() {
+        FormattingService formattingService = getFormattingServiceFixture("TRY", 0);
+
+        LocaleContextHolder.setLocale(TURKISH);
+        String turkish = formattingService.formatAmount(new BigDecimal("1234.5"));
+
+        LocaleContextHolder.setLocale(Locale.US);
+        String english = formattingService.formatAmount(new BigDecimal("1234.5"));
+
+        assertEquals(expected(TURKISH, "TRY", "1234.5"), turkish);
+        assertEquals(expected(Locale.US, "TRY", "1234.5"), english);
+    }
+
+    @Test
+    void formatAmountWhenLocaleIsUnknown() {
+        FormattingService formattingService = getFormattingServiceFixture("TRY", 0);
+
+        assertEquals(expected(Locale.getDefault(), "TRY", "20"), formattingService.formatAmount(new BigDecimal("20"), new Locale("xx", "YY")));
+        assertEquals(expected(Locale.US, "TRY", "20"), formattingService.formatAmount(new BigDecimal("20"), Locale.forLanguageTag("en-US-u-nu-arab")));
+    }
+
+    @Test
+    void formatAmountFromCache() {
+        FormattingService formattingService = getFormattingServiceFixture("TRY", 100);
+
+        assertEquals(expected(TURKISH, "TRY", "20"), formattingService.formatAmount(new BigDecimal("20.00"), TURKISH));
+        assertEquals(expected(TURKISH, "TRY", "20"), formattingService.formatAmount(new BigDecimal("20"), TURKISH));
+        assertEquals(expected(Locale.US, "TRY", "20"), formattingService.formatAmount(new BigDecimal("20"), Locale.US));
+    }
+
+    @Test
+    void formatAmountWhenManyThreadsShareTheService() throws Exception {
+        FormattingService formattingService = getFormattingServiceFixture("TRY", 0);
+        ExecutorService executorService = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Locale locale = i % 2 == 0 ? TURKISH : Locale.US;
+            int thread = i;
+
+            futures.add(executorService.submit(() -> {
+                start.await();
+
+                for (int j = 0; j < 2_000; j++) {
+                    BigDecimal amount = BigDecimal.valueOf(thread * 100_000L + j, 2);
+
+                    assertEquals(expected(locale, "TRY", amount.toPlainString()), formattingService.formatAmount(amount, locale));
+                }
+
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+
+        executorService.shutdown();
+    }
+
+    @Test
+    void formatDate() {
+        FormattingService formattingService = getFormattingServiceFixture();
+
+        LocaleContextHolder.setLocale(TURKISH);
+
+        assertEquals("2025-03-01", formattingService.formatDate(Date.valueOf("2025-03-01")));
+    }
+
+    private static String expected(Locale locale, String currencyCode, String amount) {
+        NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(locale);
+
+        currencyFormat.setCurrency(Currency.getInstance(currencyCode));
+
+        return currencyFormat.format(new BigDecimal(amount));
+    }
+}
@@ -0,0 +1,175 @@
+package com.tanermansur.loan.service;
+
+import com.tanermansur.loan.dto.CreateLoanRequestDTO;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.exception.IdempotentRequestInProgressException;
+import com.tanermansur.loan.exception.InvalidIdempotencyKeyException;
+import com.tanermansur.loan.exception.LoanNotFoundException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+class IdempotencyServiceTest {
+    @InjectMocks
+    private IdempotencyService idempotencyService;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final Customer customer = new Customer();
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(idempotencyService, "maximumSize", 10L);
+        ReflectionTestUtils.setField(idempotencyService, "timeToLive", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(idempotencyService, "waitTimeout", Duration.ofSeconds(5));
+
+        idempotencyService.init();
+
+        customer.setId(1L);
+    }
+
+    @Test
+    void executeWhenRetried() {
+        assertEquals(1, idempotencyService.execute(customer, "key", "payLoan", "10", executions::incrementAndGet));
+        assertEquals(1, idempotencyService.execute(customer, "key", "payLoan", "10", executions::incrementAndGet));
+        assertEquals(1, executions.get());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "loan.idempotency").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void executeWithoutKey() {
+        idempotencyService.execute(customer, null, "payLoan", "10", executions::incrementAndGet);
+        idempotencyService.execute(customer, " ", "payLoan", "10", executions::incrementAndGet);
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void executeWithSameKeyForAnotherCustomerOrOperation() {
+        Customer anotherCustomer = new Customer();
+        anotherCustomer.setId(2L);
+
+        idempotencyService.execute(customer, "key", "payLoan", "10", executions::incrementAndGet);
+        idempotencyService.execute(anotherCustomer, "key", "payLoan", "10", executions::incrementAndGet);
+        idempotencyService.execute(customer, "key", "payLoans", "10", executions::incrementAndGet);
+
+        assertEquals(3, executions.get());
+    }
+
+    @Test
+    void executeWhenKeyIsReusedForDifferentRequest() {
+        idempotencyService.execute(customer, "key", "payLoan", "10", executions::incrementAndGet);
+
+        assertThrows(InvalidIdempotencyKeyException.class, () -> idempotencyService.execute(customer, "key", "payLoan", "20", executions::incrementAndGet));
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void executeWhenRetriedWithAmountOfAnotherScale() {
+        idempotencyService.execute(customer, "key", "createLoan", createLoanRequest("1000"), executions::incrementAndGet);
+        idempotencyService.execute(customer, "key", "createLoan", createLoanRequest("1000.00"), executions::incrementAndGet);
+
+        assertEquals(1, executions.get());
+        assertThrows(InvalidIdempotencyKeyException.class, () -> idempotencyService.execute(customer, "key", "createLoan", createLoanRequest("1000.01"), executions::incrementAndGet));
+    }
+
+    @Test
+    void executeWhenKeyIsTooLong() {
+        assertThrows(InvalidIdempotencyKeyException.class, () -> idempotencyService.execute(customer, "k".repeat(256), "payLoan", "10", executions::incrementAndGet));
+    }
+
+    @Test
+    void executeAgainWhenFirstRequestFailed() {
+        assertThrows(LoanNotFoundException.class, () -> idempotencyService.execute(customer, "key", "payLoan", "10", () -> {
+            throw new LoanNotFoundException(1L);
+        }));
+
+        assertEquals(1, idempotencyService.execute(customer, "key", "payLoan", "10", executions::incrementAndGet));
+    }
+
+    @Test
+    void executeWhenRetriedWhileInProgress() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+        try {
+            Future<Integer> first = executorService.submit(() -> idempotencyService.execute(customer, "key", "payLoan", "10", () -> {
+                started.countDown();
+                try {
+                    assertTrue(released.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+
+                return executions.incrementAndGet();
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            Future<Integer> second = executorService.submit(() -> idempotencyService.execute(customer, "key", "payLoan", "10", executions::incrementAndGet));
+            Future<Integer> third = executorService.submit(() -> idempotencyService.execute(customer, "key", "payLoan", "10", executions::incrementAndGet));
+
+            released.countDown();
+
+            assertEquals(1, first.get(5, TimeUnit.SECONDS));
+            assertEquals(1, second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, third.get(5, TimeUnit.SECONDS));
+            assertEquals(1, executions.get());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void executeWhenFirstRequestOutlastsWaitTimeout() throws Exception {
+        ReflectionTestUtils.setField(idempotencyService, "waitTimeout", Duration.ofMillis(10));
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+        try {
+            executorService.submit(() -> idempotencyService.execute(customer, "key", "payLoan", "10", () -> {
+                started.countDown();
+                try {
+                    return released.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            assertThrows(IdempotentRequestInProgressException.class, () -> idempotencyService.execute(customer, "key", "payLoan", "10", executions::incrementAndGet));
+            assertEquals(0, executions.get());
+        } finally {
+            released.countDown();
+            executorService.shutdownNow();
+        }
+    }
+
+    private static CreateLoanRequestDTO createLoanRequest(String loanAmount) {
+        CreateLoanRequestDTO request = new CreateLoanRequestDTO();
+
+        request.setLoanAmount(new BigDecimal(loanAmount));
+        request.setNumberOfInstallments(6);
+        request.setInterestRate("0.1");
+
+        return request;
+    }
+}
@@ -1,18 +1,22 @@
 package com.tanermansur.loan.service;
 
+import com.tanermansur.loan.entity.Customer;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.MalformedJwtException;
-import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
+import org.mockito.Spy;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Date;
-import java.util.Random;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -22,14 +26,14 @@ class JwtServiceTest {
     @InjectMocks
     private JwtService jwtService;
 
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @BeforeEach
     void setUp() {
-        Random random = new Random();
-
-        byte[] keyBytes = new byte[32];
-        random.nextBytes(keyBytes);
+        ReflectionTestUtils.setField(jwtService, "verifiedTokenCacheMaximumSize", 10L);
 
-        ReflectionTestUtils.setField(jwtService, "signKey", Keys.hmacShaKeyFor(keyBytes));
+        jwtService.init();
     }
 
     @Test
@@ -66,4 +70,52 @@ class JwtServiceTest {
 
         assertTrue(jwtService.validateToken(token, User.withUsername("test").password("password").build()));
     }
+
+    @Test
+    void validateTokenWhenValidClaims() {
+        String token = jwtService.generateToken("test");
+        Claims claims = jwtService.extractAllClaims(token);
+
+        assertTrue(jwtService.validateToken(claims, User.withUsername("test").password("password").build()));
+        assertFalse(jwtService.validateToken(claims, User.withUsername("other").password("password").build()));
+    }
+
+    @Test
+    void extractAllClaimsWhenTokenIsCached() {
+        String token = jwtService.generateToken("test");
+
+        Claims claims = jwtService.extractAllClaims(token);
+
+        assertSame(claims, jwtService.extractAllClaims(token));
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "jwt.verified-tokens").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "jwt.verified-tokens").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void generateTokenWhenStatelessPrincipalIsDisabled() {
+        Customer customer = new Customer();
+
+        customer.setId(1L);
+
+        Claims claims = jwtService.extractAllClaims(jwtService.generateToken("first.customer", customer));
+
+        assertFalse(jwtService.hasPrincipalClaims(claims));
+        assertNull(jwtService.extractCustomerId(claims));
+    }
+
+    @Test
+    void generateTokenWhenStatelessPrincipalIsEnabled() {
+        ReflectionTestUtils.setField(jwtService, "statelessPrincipal", true);
+
+        Customer customer = new Customer();
+
+        customer.setId(1L);
+
+        Claims claims = jwtService.extractAllClaims(jwtService.generateToken("first.customer", customer));
+
+        assertTrue(jwtService.hasPrincipalClaims(claims));
+        assertEquals("first.customer", claims.getSubject());
+        assertEquals(1L, jwtService.extractCustomerId(claims));
+        assertEquals(List.of("ROLE_USER"), jwtService.extractRoles(claims));
+    }
 }
\ No newline at end of file
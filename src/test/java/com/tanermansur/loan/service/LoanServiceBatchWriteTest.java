@@ -0,0 +1,150 @@
+package com.tanermansur.loan.service;
+
+import com.tanermansur.loan.context.CreateLoanContext;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.entity.LoanInstallment;
+import com.tanermansur.loan.money.Money;
+import com.tanermansur.loan.money.Rate;
+import com.tanermansur.loan.repository.CustomerRepository;
+import com.tanermansur.loan.support.JdbcStatementCounter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:loan-batch-write")
+@ActiveProfiles("test")
+class LoanServiceBatchWriteTest {
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcStatementCounter jdbcStatementCounter;
+
+    @Test
+    void createLoanInsertsInstallmentsInSingleBatch() {
+        CreateLoanContext context = newCreateLoanContext("batch");
+
+        jdbcStatementCounter.reset();
+
+        loanService.createLoan(context);
+
+        assertEquals(24, context.getLoan().getInstallments().size());
+        assertEquals(24, jdbcStatementCounter.batchedRows("insert into loan_installment"));
+        assertEquals(1, jdbcStatementCounter.executedBatches("insert into loan_installment"));
+        assertEquals(0, jdbcStatementCounter.singleExecutions("insert into loan_installment"));
+        assertEquals(1, jdbcStatementCounter.executedBatches("insert into loan "));
+    }
+
+    @Test
+    void payInstallmentsUpdatesOnlyPaidInstallmentsInSingleBatch() {
+        CreateLoanContext context = newCreateLoanContext("payment");
+
+        loanService.createLoan(context);
+
+        jdbcStatementCounter.reset();
+
+        boolean loanPaid = transactionTemplate.execute(status -> {
+            loanService.lockLoan(context.getCustomer(), context.getLoan().getId());
+
+            List<LoanInstallment> installments = loanService.getPayableInstallments(context.getCustomer(), context.getLoan().getId(), LocalDate.parse("2025-05-01"));
+
+            assertEquals(3, installments.size());
+            assertEquals(LocalDate.parse("2025-03-01"), installments.get(0).getDueDate().toLocalDate());
+
+            for (LoanInstallment installment : installments) {
+                installment.setPaid(true);
+                installment.setPaidAmount(installment.getAmount());
+                installment.setPaymentDate(Date.valueOf("2025-02-03"));
+            }
+
+            return loanService.payInstallments(context.getLoan().getId(), installments);
+        });
+
+        assertFalse(loanPaid);
+        assertEquals(4, jdbcStatementCounter.singleExecutions("select"), "locked loan, payable installments, unpaid count and version check on commit");
+        assertEquals(3, jdbcStatementCounter.batchedRows("update loan_installment"));
+        assertEquals(1, jdbcStatementCounter.executedBatches("update loan_installment"));
+        assertEquals(1, jdbcStatementCounter.batchedRows("update loan "), "version increment on commit");
+    }
+
+    @Test
+    void payInstallmentsOfSeveralLoansInOneTransaction() {
+        CreateLoanContext firstContext = newCreateLoanContext("multiple");
+        CreateLoanContext secondContext = newCreateLoanContext("multiple");
+
+        secondContext.setCustomer(firstContext.getCustomer());
+        secondContext.setNumberOfInstallments(6);
+        loanService.createLoan(firstContext);
+        loanService.createLoan(secondContext);
+
+        jdbcStatementCounter.reset();
+
+        Set<Long> paidLoanIds = transactionTemplate.execute(status -> {
+            List<LoanInstallment> installments = loanService.getPayableInstallments(firstContext.getCustomer(), LocalDate.parse("2025-09-01"));
+
+            // Oldest due first across both loans
+            assertEquals(13, installments.size());
+            assertEquals(LocalDate.parse("2025-03-01"), installments.get(1).getDueDate().toLocalDate());
+            assertEquals(LocalDate.parse("2025-04-01"), installments.get(2).getDueDate().toLocalDate());
+
+            for (LoanInstallment installment : installments) {
+                installment.setPaid(true);
+                installment.setPaidAmount(installment.getAmount());
+                installment.setPaymentDate(Date.valueOf("2025-02-03"));
+            }
+
+            return loanService.payInstallments(installments);
+        });
+
+        assertEquals(Set.of(secondContext.getLoan().getId()), paidLoanIds);
+        assertEquals(2, jdbcStatementCounter.singleExecutions("select"), "payable installments with their loans and loans left unpaid");
+        assertEquals(13, jdbcStatementCounter.batchedRows("update loan_installment"));
+        assertEquals(1, jdbcStatementCounter.executedBatches("update loan_installment"));
+        assertEquals(1, jdbcStatementCounter.singleExecutions("update loan "), "paid loans marked at once");
+        assertEquals(2, jdbcStatementCounter.batchedRows("update loan "), "version increments on commit");
+    }
+
+    private CreateLoanContext newCreateLoanContext(String name) {
+        Customer customer = new Customer();
+
+        customer.setName(name);
+        customer.setSurname("customer");
+        customer.setCreditLimit(new BigDecimal("1000"));
+
+        return CreateLoanContext.builder()
+                .now(Instant.parse("2025-02-03T00:00:00.000Z"))
+                .customer(customerRepository.save(customer))
+                .loanAmount(Money.of(new BigDecimal("240"), 2))
+                .interestRate(Rate.of(new BigDecimal("0.1")))
+                .numberOfInstallments(24)
+                .build();
+    }
+
+    @TestConfiguration
+    static class JdbcStatementCounterConfiguration {
+        @Bean
+        static JdbcStatementCounter jdbcStatementCounter() {
+            return new JdbcStatementCounter();
+        }
+    }
+}
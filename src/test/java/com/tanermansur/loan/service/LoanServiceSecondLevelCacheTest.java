@@ -0,0 +1,153 @@
+package com.tanermansur.loan.service;
+
+import com.tanermansur.loan.context.CreateLoanContext;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.entity.Loan;
+import com.tanermansur.loan.entity.LoanInstallment;
+import com.tanermansur.loan.money.Money;
+import com.tanermansur.loan.money.Rate;
+import com.tanermansur.loan.repository.CustomerRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:loan-second-level-cache",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@ActiveProfiles("test")
+class LoanServiceSecondLevelCacheTest {
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void getInstallmentsIsServedFromCacheOnRepeatedReads() {
+        CreateLoanContext context = createLoan("cached");
+
+        loanService.getInstallments(context.getCustomer(), context.getLoan().getId());
+
+        statistics.clear();
+
+        List<LoanInstallment> installments = loanService.getInstallments(context.getCustomer(), context.getLoan().getId());
+
+        assertEquals(6, installments.size());
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertEquals(1, statistics.getCollectionStatistics(Loan.class.getName() + ".installments").getCacheHitCount());
+        assertEquals(6, statistics.getEntityStatistics(LoanInstallment.class.getName()).getCacheHitCount());
+        assertNotNull(meterRegistry.find("hibernate.second.level.cache.requests").tag("region", "loan-installments").tag("result", "hit").functionCounter());
+        assertTrue(meterRegistry.get("cache.gets").tag("cache", "loan.second-level-cache.loan-installments").tag("result", "hit").functionCounter().count() > 0);
+    }
+
+    @Test
+    void getInstallmentsSeesPaymentsAfterCachedRead() {
+        CreateLoanContext context = createLoan("paying");
+        long loanId = context.getLoan().getId();
+
+        assertFalse(loanService.getInstallments(context.getCustomer(), loanId).get(0).isPaid());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            loanService.lockLoan(context.getCustomer(), loanId);
+
+            LoanInstallment installment = loanService.getInstallments(context.getCustomer(), loanId).get(0);
+
+            installment.setPaid(true);
+            installment.setPaidAmount(installment.getAmount());
+            installment.setPaymentDate(Date.valueOf("2025-02-03"));
+
+            loanService.payInstallments(loanId, List.of(installment));
+        });
+
+        assertTrue(loanService.getInstallments(context.getCustomer(), loanId).get(0).isPaid());
+        assertEquals(1, loanService.getLoan(context.getCustomer(), loanId).getVersion());
+    }
+
+    @Test
+    void getLoanSeesUpdatedLoanAfterCachedRead() {
+        CreateLoanContext context = createLoan("updating");
+        Loan loan = loanService.getLoan(context.getCustomer(), context.getLoan().getId());
+
+        loan.setLoanAmount(new BigDecimal("70.00"));
+        loanService.updateLoan(loan);
+
+        assertEquals(0, new BigDecimal("70").compareTo(loanService.getLoan(context.getCustomer(), loan.getId()).getLoanAmount()));
+    }
+
+    @Test
+    void loadCustomerSeesCreditLimitChangesAfterCachedRead() {
+        Customer customer = createLoan("limited").getCustomer();
+        Customer reference = new Customer();
+
+        reference.setId(customer.getId());
+
+        assertNull(customerService.loadCustomer(reference).getUsedCreditLimit());
+
+        // Bulk update, the whole customer region is invalidated
+        customerService.reserveCreditLimit(customer, Money.of(BigDecimal.TEN, 2), Money.of(BigDecimal.TEN, 2));
+
+        Customer reserved = customerService.loadCustomer(reference);
+
+        assertEquals(0, BigDecimal.TEN.compareTo(reserved.getUsedCreditLimit()));
+
+        reserved.setCreditLimit(new BigDecimal("2000"));
+        customerService.updateCustomer(reserved);
+
+        assertEquals(0, new BigDecimal("2000").compareTo(customerService.loadCustomer(reference).getCreditLimit()));
+    }
+
+    private CreateLoanContext createLoan(String name) {
+        Customer customer = new Customer();
+
+        customer.setName(name);
+        customer.setSurname("customer");
+        customer.setCreditLimit(new BigDecimal("1000"));
+
+        CreateLoanContext context = CreateLoanContext.builder()
+                .now(Instant.parse("2025-02-03T00:00:00.000Z"))
+                .customer(customerRepository.save(customer))
+                .loanAmount(Money.of(new BigDecimal("60"), 2))
+                .interestRate(Rate.of(new BigDecimal("0.1")))
+                .numberOfInstallments(6)
+                .build();
+
+        context.calculateInstallmentAmounts();
+        loanService.createLoan(context);
+
+        return context;
+    }
+}
@@ -5,21 +5,39 @@ import com.tanermansur.loan.dto.GetLoansRequestDTO;
 import com.tanermansur.loan.entity.Customer;
 import com.tanermansur.loan.entity.Loan;
 import com.tanermansur.loan.entity.LoanInstallment;
+import com.tanermansur.loan.exception.LoanNotFoundException;
 import com.tanermansur.loan.fixture.LoanFixture;
+import com.tanermansur.loan.money.Money;
+import com.tanermansur.loan.money.Rate;
+import com.tanermansur.loan.repository.LoanInstallmentRepository;
 import com.tanermansur.loan.repository.LoanRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.sql.Date;
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -32,15 +50,29 @@ class LoanServiceTest {
     @Mock
     private LoanRepository mockLoanRepository;
 
+    @Mock
+    private LoanInstallmentRepository mockLoanInstallmentRepository;
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private EntityManagerFactory mockEntityManagerFactory;
+
+    @Mock
+    private EntityManager mockEntityManager;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(loanService, "exportChunkSize", 2);
+    }
+
     @Test
     void createLoan() {
         CreateLoanContext context = CreateLoanContext.builder().build();
         Customer customer = mock(Customer.class);
 
         context.setNow(ZonedDateTime.parse("2025-02-03T00:00:00.000Z").toInstant());
-        context.setLoanAmount(new BigDecimal("60"));
+        context.setLoanAmount(Money.of(new BigDecimal("60"), 2));
         context.setCustomer(customer);
-        context.setInterestRate(new BigDecimal("0.1"));
+        context.setInterestRate(Rate.of(new BigDecimal("0.1")));
         context.setNumberOfInstallments(6);
 
         doAnswer(invocationOnMock -> invocationOnMock.getArgument(0)).when(mockLoanRepository).save(any());
@@ -75,12 +107,16 @@ class LoanServiceTest {
     void getLoans() {
         Customer customer = mock(Customer.class);
         GetLoansRequestDTO getLoansRequestDTO = mock(GetLoansRequestDTO.class);
+        Loan loan = LoanFixture.getLoanFixture(customer);
+
+        when(mockLoanRepository.findAll(ArgumentMatchers.<Specification<Loan>>any(), any(Pageable.class))).thenReturn(new PageImpl<>(List.of(loan)));
 
-        loanService.getLoans(customer, getLoansRequestDTO, 10, 0);
+        loanService.getLoans(customer, getLoansRequestDTO, 10, 0, true);
 
         ArgumentCaptor<Pageable> argumentCaptor = ArgumentCaptor.forClass(Pageable.class);
 
-        verify(mockLoanRepository).findAllByCustomerId(eq(customer.getId()), argumentCaptor.capture());
+        verify(mockLoanRepository).findAll(ArgumentMatchers.<Specification<Loan>>any(), argumentCaptor.capture());
+        verify(mockLoanRepository).fetchInstallments(List.of(1L));
 
         Pageable pageable = argumentCaptor.getValue();
 
@@ -88,6 +124,66 @@ class LoanServiceTest {
         assertEquals(10, pageable.getPageSize());
     }
 
+    @Test
+    void getLoansWhenNoLoansFound() {
+        Customer customer = mock(Customer.class);
+
+        when(mockLoanRepository.findAll(ArgumentMatchers.<Specification<Loan>>any(), any(Pageable.class))).thenReturn(Page.empty());
+
+        assertTrue(loanService.getLoans(customer, mock(GetLoansRequestDTO.class), 10, 0, true).isEmpty());
+        verify(mockLoanRepository, never()).fetchInstallments(any());
+    }
+
+    @Test
+    void getLoansWithoutInstallments() {
+        Customer customer = mock(Customer.class);
+        Loan loan = LoanFixture.getLoanFixture(customer);
+
+        when(mockLoanRepository.findAll(ArgumentMatchers.<Specification<Loan>>any(), any(Pageable.class))).thenReturn(new PageImpl<>(List.of(loan)));
+
+        assertEquals(List.of(loan), loanService.getLoans(customer, mock(GetLoansRequestDTO.class), 10, 0, false).getContent());
+        verify(mockLoanRepository, never()).fetchInstallments(any());
+    }
+
+    @Test
+    void exportLoansInChunks() {
+        Customer customer = mock(Customer.class);
+        List<Loan> loans = new ArrayList<>();
+
+        for (long id = 1; id <= 3; id++) {
+            Loan loan = LoanFixture.getLoanFixture(customer);
+
+            loan.setId(id);
+            loans.add(loan);
+        }
+
+        when(mockLoanRepository.streamByCustomerId(1L)).thenReturn(loans.stream());
+
+        List<List<Long>> chunks = new ArrayList<>();
+
+        loanService.exportLoans(1L, true, chunk -> chunks.add(chunk.stream().map(Loan::getId).toList()));
+
+        assertEquals(List.of(List.of(1L, 2L), List.of(3L)), chunks);
+        verify(mockLoanRepository).fetchInstallments(List.of(1L, 2L));
+        verify(mockLoanRepository).fetchInstallments(List.of(3L));
+        verify(mockEntityManager, times(2)).clear();
+    }
+
+    @Test
+    void exportLoansOfAllCustomersWithoutInstallments() {
+        Loan loan = LoanFixture.getLoanFixture(mock(Customer.class));
+        List<Loan> exportedLoans = new ArrayList<>();
+
+        when(mockLoanRepository.streamAll()).thenReturn(Stream.of(loan));
+
+        loanService.exportLoans(null, false, exportedLoans::addAll);
+
+        assertEquals(List.of(loan), exportedLoans);
+        verify(mockLoanRepository, never()).streamByCustomerId(anyLong());
+        verify(mockLoanRepository, never()).fetchInstallments(any());
+        verify(mockEntityManager).clear();
+    }
+
     @Test
     void getInstallments() {
         Customer customer = mock(Customer.class);
@@ -95,7 +191,7 @@ class LoanServiceTest {
         when(customer.getId()).thenReturn(1L);
 
         Loan loan = LoanFixture.getLoanFixture(customer);
-        when(mockLoanRepository.findByCustomerIdAndId(1L, 1L)).thenReturn(Optional.of(loan));
+        when(mockLoanRepository.findById(1L)).thenReturn(Optional.of(loan));
 
         List<LoanInstallment> installments = loanService.getInstallments(customer, 1L);
 
@@ -110,13 +206,37 @@ class LoanServiceTest {
 
         Loan loan = LoanFixture.getLoanFixture(customer);
 
-        when(mockLoanRepository.findByCustomerIdAndId(1L, 1L)).thenReturn(Optional.of(loan));
+        when(mockLoanRepository.findById(1L)).thenReturn(Optional.of(loan));
 
         Loan actualLoan = loanService.getLoan(customer, 1L);
 
         assertEquals(loan, actualLoan);
     }
 
+    @Test
+    void getLoanWhenLoanBelongsToAnotherCustomer() {
+        Customer owner = mock(Customer.class);
+        Customer customer = mock(Customer.class);
+
+        when(owner.getId()).thenReturn(1L);
+        when(customer.getId()).thenReturn(2L);
+        when(mockLoanRepository.findById(1L)).thenReturn(Optional.of(LoanFixture.getLoanFixture(owner)));
+
+        assertThrows(LoanNotFoundException.class, () -> loanService.getLoan(customer, 1L));
+        assertThrows(LoanNotFoundException.class, () -> loanService.getInstallments(customer, 1L));
+    }
+
+    @Test
+    void getLoanVersion() {
+        Customer customer = mock(Customer.class);
+
+        when(customer.getId()).thenReturn(1L);
+        when(mockLoanRepository.findVersionByCustomerIdAndId(1L, 1L)).thenReturn(Optional.of(3L));
+
+        assertEquals(3L, loanService.getLoanVersion(customer, 1L));
+        assertThrows(LoanNotFoundException.class, () -> loanService.getLoanVersion(customer, 2L));
+    }
+
     @Test
     void updateLoan() {
         Loan loan = mock(Loan.class);
@@ -125,4 +245,84 @@ class LoanServiceTest {
 
         verify(mockLoanRepository).save(loan);
     }
-}
\ No newline at end of file
+
+    @Test
+    void getPayableInstallments() {
+        Customer customer = mock(Customer.class);
+
+        when(customer.getId()).thenReturn(1L);
+
+        List<LoanInstallment> installments = LoanFixture.getLoanFixture(customer).getInstallments().subList(0, 2);
+
+        when(mockLoanInstallmentRepository.findPayableInstallments(1L, 1L, Date.valueOf("2025-04-01"))).thenReturn(installments);
+
+        assertEquals(installments, loanService.getPayableInstallments(customer, 1L, LocalDate.parse("2025-04-01")));
+        verifyNoInteractions(mockLoanRepository);
+    }
+
+    @Test
+    void getPayableInstallmentsWhenLoanIsNotFound() {
+        Customer customer = mock(Customer.class);
+
+        when(customer.getId()).thenReturn(1L);
+        when(mockLoanInstallmentRepository.findPayableInstallments(1L, 1L, Date.valueOf("2025-04-01"))).thenReturn(Collections.emptyList());
+
+        assertThrows(LoanNotFoundException.class, () -> loanService.getPayableInstallments(customer, 1L, LocalDate.parse("2025-04-01")));
+    }
+
+    @Test
+    void lockLoan() {
+        Customer customer = new Customer();
+        customer.setId(1L);
+
+        when(mockLoanRepository.findWithVersionCheckById(1L)).thenReturn(Optional.of(LoanFixture.getLoanFixture(customer)));
+
+        loanService.lockLoan(customer, 1L);
+
+        verify(mockLoanRepository).findWithVersionCheckById(1L);
+    }
+
+    @Test
+    void lockLoanWhenLoanIsAnotherCustomers() {
+        Customer owner = new Customer();
+        owner.setId(1L);
+
+        Customer customer = new Customer();
+        customer.setId(2L);
+
+        when(mockLoanRepository.findWithVersionCheckById(1L)).thenReturn(Optional.of(LoanFixture.getLoanFixture(owner)));
+
+        assertThrows(LoanNotFoundException.class, () -> loanService.lockLoan(customer, 1L));
+    }
+
+    @Test
+    void payInstallments() {
+        Loan loan = LoanFixture.getLoanFixture(mock(Customer.class));
+        LoanInstallment paidInstallment = loan.getInstallments().get(0);
+
+        paidInstallment.setLoan(loan);
+        paidInstallment.setPaid(true);
+
+        when(mockLoanInstallmentRepository.findLoanIdsWithUnpaidInstallments(Set.of(1L))).thenReturn(List.of(1L));
+
+        assertFalse(loanService.payInstallments(1L, List.of(paidInstallment)));
+        verify(mockLoanRepository, never()).findWithVersionCheckById(anyLong());
+        verify(mockLoanInstallmentRepository, never()).findAllById(any());
+        verify(mockLoanRepository, never()).markAllPaid(any());
+    }
+
+    @Test
+    void payInstallmentsWhenLastInstallmentIsPaid() {
+        Loan loan = LoanFixture.getLoanFixture(mock(Customer.class));
+        LoanInstallment paidInstallment = loan.getInstallments().get(5);
+
+        paidInstallment.setLoan(loan);
+        paidInstallment.setPaid(true);
+
+        when(mockLoanInstallmentRepository.findLoanIdsWithUnpaidInstallments(Set.of(1L))).thenReturn(List.of());
+
+        assertTrue(loanService.payInstallments(1L, List.of(paidInstallment)));
+        verify(mockLoanRepository).markAllPaid(Set.of(1L));
+        verify(mockEntityManagerFactory.getCache()).evict(Loan.class, 1L);
+    }
+}
@@ -0,0 +1,119 @@
+package com.tanermansur.loan.service;
+
+import com.tanermansur.loan.context.CreateLoanContext;
+import com.tanermansur.loan.entity.Customer;
+import com.tanermansur.loan.entity.LoanInstallment;
+import com.tanermansur.loan.money.Money;
+import com.tanermansur.loan.money.Rate;
+import com.tanermansur.loan.repository.CustomerRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:loan-version")
+@ActiveProfiles("test")
+class LoanServiceVersionTest {
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void payInstallmentsIncrementsLoanVersion() {
+        CreateLoanContext context = createLoan("versioned");
+        long loanId = context.getLoan().getId();
+
+        assertEquals(0, loanService.getLoanVersion(context.getCustomer(), loanId));
+
+        transactionTemplate.executeWithoutResult(status -> payInstallment(context, 0));
+
+        assertEquals(1, loanService.getLoanVersion(context.getCustomer(), loanId));
+
+        transactionTemplate.executeWithoutResult(status -> payInstallment(context, 0));
+
+        assertEquals(2, loanService.getLoanVersion(context.getCustomer(), loanId));
+    }
+
+    @Test
+    void lockLoanLeavesLoanVersion() {
+        CreateLoanContext context = createLoan("unchanged");
+        long loanId = context.getLoan().getId();
+
+        // A payment that pays nothing
+        transactionTemplate.executeWithoutResult(status -> loanService.lockLoan(context.getCustomer(), loanId));
+
+        assertEquals(0, loanService.getLoanVersion(context.getCustomer(), loanId));
+    }
+
+    @Test
+    void payInstallmentsFailsWhenLoanIsPaidConcurrently() {
+        CreateLoanContext context = createLoan("concurrent");
+        long loanId = context.getLoan().getId();
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            payInstallment(context, 0);
+
+            // Another payment of the same loan commits while this one is still open
+            CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(otherStatus -> payInstallment(context, 1))).orTimeout(1, TimeUnit.MINUTES).join();
+        }));
+
+        assertEquals(1, loanService.getLoanVersion(context.getCustomer(), loanId));
+        assertEquals(List.of(3, 5), payableInstallments(context).stream().map(installment -> installment.getDueDate().toLocalDate().getMonthValue()).toList(),
+                "only the concurrent payment is kept");
+    }
+
+    // Pays one of the payable installments the way a payment does, in the current transaction
+    private void payInstallment(CreateLoanContext context, int index) {
+        loanService.lockLoan(context.getCustomer(), context.getLoan().getId());
+
+        LoanInstallment installment = payableInstallments(context).get(index);
+
+        installment.setPaid(true);
+        installment.setPaidAmount(installment.getAmount());
+        installment.setPaymentDate(Date.valueOf("2025-02-03"));
+
+        loanService.payInstallments(context.getLoan().getId(), List.of(installment));
+    }
+
+    private List<LoanInstallment> payableInstallments(CreateLoanContext context) {
+        return loanService.getPayableInstallments(context.getCustomer(), context.getLoan().getId(), LocalDate.parse("2025-05-01"));
+    }
+
+    private CreateLoanContext createLoan(String name) {
+        Customer customer = new Customer();
+
+        customer.setName(name);
+        customer.setSurname("customer");
+        customer.setCreditLimit(new BigDecimal("1000"));
+
+        CreateLoanContext context = CreateLoanContext.builder()
+                .now(Instant.parse("2025-02-03T00:00:00.000Z"))
+                .customer(customerRepository.save(customer))
+                .loanAmount(Money.of(new BigDecimal("60"), 2))
+                .interestRate(Rate.of(new BigDecimal("0.1")))
+                .numberOfInstallments(6)
+                .build();
+
+        context.calculateInstallmentAmounts();
+        loanService.createLoan(context);
+
+        return context;
+    }
+}
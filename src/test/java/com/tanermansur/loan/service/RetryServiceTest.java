@@ -0,0 +1,99 @@
+package com.tanermansur.loan.service;
+
+import com.tanermansur.loan.entity.Loan;
+import com.tanermansur.loan.exception.LoanNotFoundException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+class RetryServiceTest {
+    @InjectMocks
+    private RetryService retryService;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(retryService, "maxAttempts", 3);
+        ReflectionTestUtils.setField(retryService, "initialBackoff", Duration.ofMillis(1));
+        ReflectionTestUtils.setField(retryService, "maxBackoff", Duration.ofMillis(2));
+    }
+
+    @Test
+    void retryOnConflictUntilSuccessful() {
+        String result = retryService.retryOnConflict("payLoan", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ObjectOptimisticLockingFailureException(Loan.class, 1L);
+            }
+
+            return "paid";
+        });
+
+        assertEquals("paid", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2.0, count("loan.optimistic-lock.conflicts"));
+        assertEquals(2.0, count("loan.optimistic-lock.retries"));
+    }
+
+    @Test
+    void retryOnConflictWhenAttemptsAreExhausted() {
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> retryService.retryOnConflict("payLoan", () -> {
+            attempts.incrementAndGet();
+
+            throw new ObjectOptimisticLockingFailureException(Loan.class, 1L);
+        }));
+
+        assertEquals(3, attempts.get());
+        assertEquals(3.0, count("loan.optimistic-lock.conflicts"));
+        assertEquals(2.0, count("loan.optimistic-lock.retries"));
+    }
+
+    @Test
+    void retryOnConflictDoesNotRetryOtherFailures() {
+        assertThrows(LoanNotFoundException.class, () -> retryService.retryOnConflict("payLoan", () -> {
+            attempts.incrementAndGet();
+
+            throw new LoanNotFoundException(1L);
+        }));
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void retryOnConflictWithinSurroundingTransaction() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        try {
+            assertThrows(ObjectOptimisticLockingFailureException.class, () -> retryService.retryOnConflict("payLoan", () -> {
+                attempts.incrementAndGet();
+
+                throw new ObjectOptimisticLockingFailureException(Loan.class, 1L);
+            }));
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+
+        assertEquals(1, attempts.get());
+    }
+
+    private double count(String name) {
+        return meterRegistry.get(name).tag("operation", "payLoan").counter().count();
+    }
+}
@@ -0,0 +1,103 @@
+package com.tanermansur.loan.support;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wraps the application data source and counts, per SQL statement, how many rows were added to JDBC batches,
+ * how many batches were executed and how many times the statement was executed on its own.
+ */
+public class JdbcStatementCounter implements BeanPostProcessor {
+    private final Map<String, AtomicInteger> batchedRows = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> executedBatches = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> singleExecutions = new ConcurrentHashMap<>();
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource) {
+            return proxy(DataSource.class, dataSource, (target, method, args) -> {
+                Object result = method.invoke(target, args);
+
+                return method.getName().equals("getConnection") ? proxy(Connection.class, (Connection) result, this::onConnection) : result;
+            });
+        }
+
+        return bean;
+    }
+
+    public void reset() {
+        batchedRows.clear();
+        executedBatches.clear();
+        singleExecutions.clear();
+    }
+
+    public int batchedRows(String sqlPrefix) {
+        return sum(batchedRows, sqlPrefix);
+    }
+
+    public int executedBatches(String sqlPrefix) {
+        return sum(executedBatches, sqlPrefix);
+    }
+
+    public int singleExecutions(String sqlPrefix) {
+        return sum(singleExecutions, sqlPrefix);
+    }
+
+    private Object onConnection(Connection connection, Method method, Object[] args) throws Throwable {
+        Object result = method.invoke(connection, args);
+
+        if (method.getName().equals("prepareStatement")) {
+            String sql = ((String) args[0]).toLowerCase();
+
+            return proxy(PreparedStatement.class, (PreparedStatement) result, (statement, statementMethod, statementArgs) -> {
+                switch (statementMethod.getName()) {
+                    case "addBatch" -> increment(batchedRows, sql);
+                    case "executeBatch" -> increment(executedBatches, sql);
+                    case "execute", "executeUpdate", "executeQuery" -> increment(singleExecutions, sql);
+                    default -> {
+                    }
+                }
+
+                return statementMethod.invoke(statement, statementArgs);
+            });
+        }
+
+        return result;
+    }
+
+    private static void increment(Map<String, AtomicInteger> counters, String sql) {
+        counters.computeIfAbsent(sql, key -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private static int sum(Map<String, AtomicInteger> counters, String sqlPrefix) {
+        return counters.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(sqlPrefix))
+                .mapToInt(entry -> entry.getValue().get())
+                .sum();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, TargetInvocationHandler<T> handler) {
+        return (T) Proxy.newProxyInstance(JdbcStatementCounter.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            try {
+                return handler.invoke(target, method, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface TargetInvocationHandler<T> {
+        Object invoke(T target, Method method, Object[] args) throws Throwable;
+    }
+}